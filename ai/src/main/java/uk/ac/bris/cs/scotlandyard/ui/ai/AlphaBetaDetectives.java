@@ -0,0 +1,225 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MoveSink;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.PossibleLocations;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+/**
+ * Detective player that runs an iterative-deepening alpha-beta search over the detectives' moves
+ * and MrX's replies, and plays the best move of the deepest iteration that finished before its
+ * deadline.
+ * <br>
+ * MrX's location is hidden, so the search is run on a few positions with MrX placed on a sample
+ * of the {@link PossibleLocations}, and root moves are ranked by their average value. Within a round
+ * detectives are searched in a fixed order, which is legal since any order is, and keeps the
+ * detectives' moves from multiplying by the orders they could be made in. Moves are ordered by the
+ * best move the previous iteration found for the position, then by distance to MrX. A search
+ * that runs into the deadline throws out its unfinished iteration, so the move played is always
+ * from a completed one. MrX is handed the move that ends furthest from the detectives.
+ */
+public class AlphaBetaDetectives implements Ai {
+
+	private static final int WIN = 1_000_000;
+	private static final int INFINITY = Integer.MAX_VALUE;
+	private static final int MAX_DEPTH = 64;
+	private static final int SAMPLES = 4;          // positions searched, one per sampled MrX location
+	private static final int CHECK_EVERY = 1023;   // nodes between deadline checks, minus one
+	private static final int MAX_REMEMBERED = 1 << 20;
+
+	private PossibleLocations possible; // kept between turns of one game
+	private GameSetup tracked;          // the setup the possible locations are for
+
+	@Nonnull @Override public String name() { return "Alpha-Beta Detectives"; }
+
+	@Override public void onStart() { possible = null; }
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+		long deadline = Budget.deadline(timeoutPair);
+		ImmutableList<Move> moves = board.getAvailableMoves().asList();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves to pick from");
+		if (moves.size() == 1) return moves.get(0);
+		if (moves.get(0).commencedBy().isMrX()) return Dijkstra.findNode(board, moves);
+		Piece mover = ScotlandYard.ALL_PIECES.stream()
+				.filter(piece -> moves.stream().anyMatch(move -> move.commencedBy() == piece))
+				.findFirst().orElseThrow();
+		List<Move> rootMoves = new ArrayList<>();
+		for (Move move : moves) if (move.commencedBy() == mover) rootMoves.add(move);
+		List<Integer> candidates = candidates(board);
+		DistanceOracle distances = DistanceOracle.of(board.getSetup());
+		// closest to where MrX could be first, which is what is played if no iteration finishes
+		rootMoves.sort(Comparator.comparingInt(move -> candidates.stream()
+				.mapToInt(node -> distances.detectiveDistance(Dijkstra.destination(move), node))
+				.sum()));
+		Collections.shuffle(candidates, ThreadLocalRandom.current());
+		List<SearchState> positions = new ArrayList<>();
+		for (int location : candidates) {
+			if (positions.size() == SAMPLES) break;
+			SearchState position = SearchState.of(board, location);
+			if (!position.isGameOver()) positions.add(position); // MrX would have been caught already
+		}
+		if (positions.isEmpty()) return rootMoves.get(0);
+		return new Search(positions, deadline).run(rootMoves);
+	}
+
+	// the nodes MrX could be on, following the board's log from where the last turn left off
+	private List<Integer> candidates(Board board) {
+		if (possible == null || possible.rounds() > board.getMrXTravelLog().size()
+				|| tracked != board.getSetup()) {
+			possible = PossibleLocations.of(board.getSetup());
+			tracked = board.getSetup();
+		}
+		possible.update(board);
+		List<Integer> candidates = new ArrayList<>();
+		for (int node : possible.toArray()) candidates.add(node);
+		return candidates;
+	}
+
+	private static final class Timeout extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		Timeout() { super(null, null, false, false); }
+	}
+
+	private static final Timeout TIMEOUT = new Timeout();
+
+	// one search over every sampled position, not thread safe
+	private static final class Search {
+		private final List<SearchState> positions;
+		private final long deadline;
+		private final DistanceOracle distances;
+		private final Piece[] detectives;
+		private final Map<Long, Move> bestMoves = new HashMap<>(); // position key -> best move of the last search of it
+		private long nodes;
+		private boolean horizon; // whether the iteration stopped anywhere the game was not over
+
+		Search(List<SearchState> positions, long deadline) {
+			this.positions = positions;
+			this.deadline = deadline;
+			this.distances = DistanceOracle.of(positions.get(0).getSetup());
+			this.detectives = positions.get(0).getPlayers().stream()
+					.filter(Piece::isDetective)
+					.toArray(Piece[]::new);
+		}
+
+		Move run(List<Move> rootMoves) {
+			Move best = rootMoves.get(0);
+			for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+				horizon = false;
+				Map<Move, Long> totals = new HashMap<>();
+				try {
+					for (SearchState position : positions)
+						for (Move move : rootMoves) {
+							position.apply(move);
+							int value = alphaBeta(position, depth - 1, -INFINITY, INFINITY, 1);
+							position.undo();
+							totals.merge(move, (long) value, Long::sum);
+						}
+				} catch (Timeout timeout) {
+					break;
+				}
+				rootMoves.sort(Comparator.comparing(totals::get, Comparator.reverseOrder()));
+				best = rootMoves.get(0);
+				if (!horizon) break; // every line reached the end of the game
+			}
+			return best;
+		}
+
+		// the value of the position for the detectives, higher is better for them
+		private int alphaBeta(SearchState state, int depth, int alpha, int beta, int ply) {
+			if ((++nodes & CHECK_EVERY) == 0 && System.nanoTime() > deadline) {
+				while (state.depth() > 0) state.undo();
+				throw TIMEOUT;
+			}
+			if (state.isGameOver())
+				return state.getWinner().contains(Piece.MrX.MRX) ? -WIN + ply : WIN - ply;
+			if (depth == 0) {
+				horizon = true;
+				return evaluate(state);
+			}
+			boolean detectivesMove = !state.hasAnyMove(Piece.MrX.MRX);
+			int value = detectivesMove ? -INFINITY : INFINITY;
+			Move bestMove = null;
+			for (Move move : moves(state)) {
+				state.apply(move);
+				int child = alphaBeta(state, depth - 1, alpha, beta, ply + 1);
+				state.undo();
+				if (detectivesMove ? child > value : child < value) {
+					value = child;
+					bestMove = move;
+				}
+				if (detectivesMove) alpha = Math.max(alpha, value);
+				else beta = Math.min(beta, value);
+				if (alpha >= beta) break;
+			}
+			if (bestMoves.size() >= MAX_REMEMBERED) bestMoves.clear();
+			bestMoves.put(state.zobristKey(), bestMove);
+			return value;
+		}
+
+		private int evaluate(SearchState state) {
+			int mrX = state.location(Piece.MrX.MRX);
+			int nearest = DistanceOracle.UNREACHABLE;
+			int total = 0;
+			for (Piece detective : detectives) {
+				int distance = distances.detectiveDistance(state.location(detective), mrX);
+				nearest = Math.min(nearest, distance);
+				total += distance;
+			}
+			return -(nearest * 100 + total * 10);
+		}
+
+		// MrX's moves, or the moves of the first detective still to move, best looking first
+		private List<Move> moves(SearchState state) {
+			Piece mover = Piece.MrX.MRX;
+			if (!state.hasAnyMove(mover))
+				for (Piece detective : detectives)
+					if (state.hasAnyMove(detective)) {
+						mover = detective;
+						break;
+					}
+			int index = ScotlandYard.ALL_PIECES.indexOf(mover);
+			List<Move> moves = new ArrayList<>();
+			MoveSink collect = MoveSink.of(moves::add);
+			state.generateMoves(new MoveSink() {
+				@Override public void single(int piece, int source, int ticket, int destination) {
+					if (piece == index) collect.single(piece, source, ticket, destination);
+				}
+				@Override public void doubleMove(int piece, int source, int ticket1, int destination1,
+				                                 int ticket2, int destination2) {
+					collect.doubleMove(piece, source, ticket1, destination1, ticket2, destination2);
+				}
+			});
+			int mrX = state.location(Piece.MrX.MRX);
+			int[] locations = new int[detectives.length];
+			for (int i = 0; i < detectives.length; i++) locations[i] = state.location(detectives[i]);
+			Comparator<Move> order = mover.isMrX()
+					? Comparator.comparingInt(move -> -distances.nearestDetective(Dijkstra.destination(move), locations))
+					: Comparator.comparingInt(move -> distances.detectiveDistance(Dijkstra.destination(move), mrX));
+			moves.sort(order.thenComparing(move -> move instanceof Move.DoubleMove));
+			Move remembered = bestMoves.get(state.zobristKey());
+			if (remembered != null && moves.remove(remembered)) moves.add(0, remembered);
+			return moves;
+		}
+	}
+
+}
@@ -0,0 +1,26 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.concurrent.TimeUnit;
+
+import io.atlassian.fugue.Pair;
+
+/**
+ * Turns the time an {@link uk.ac.bris.cs.scotlandyard.model.Ai} is given for a move into the
+ * deadline its search has to stop by
+ */
+final class Budget {
+
+	private static final long MIN_MARGIN = TimeUnit.MILLISECONDS.toNanos(200);
+
+	private Budget() {}
+
+	/**
+	 * @param timeoutPair the time given to pick a move
+	 * @return the deadline of the search as a {@link System#nanoTime()}, leaving a fifth of the
+	 * time and at least 200 ms to hand the move back, or half of it if that is under 400 ms
+	 */
+	static long deadline(Pair<Long, TimeUnit> timeoutPair) {
+		long budget = timeoutPair.right().toNanos(timeoutPair.left());
+		return System.nanoTime() + budget - Math.max(budget / 5, Math.min(MIN_MARGIN, budget / 2));
+	}
+}
@@ -1,32 +1,62 @@
 package uk.ac.bris.cs.scotlandyard.ui.ai;
 
-import uk.ac.bris.cs.scotlandyard.model.Ai;
-import uk.ac.bris.cs.scotlandyard.model.Board;
-import uk.ac.bris.cs.scotlandyard.model.Move;
-import uk.ac.bris.cs.scotlandyard.model.Scotlandyard.*;
-import ValueGraph;
-
-import java.util.*;
-
-public class Dijkstra {
-    
-    private int closestValidNode;
-    public static Map<Move, Integer> weightedMoves = new HashMap<>();
-
-    public int getLength(Board board, List<Optional<Integer>> detectiveLocations, int mrXLocation){
-        return 0;
-    }
+import java.util.List;
+import java.util.Optional;
 
-    public static Move extract_Max(Map<Move, Integer> weightedMoves){
-        return null;
-    }
+import javax.annotation.Nonnull;
 
-    public static Move findNode (Board board, List<Optional<Integer>> detectiveLocations, int mrXLocation, List<Move> moves){
-        for (Move move : moves){
-            if(){}
-        }
-
-        return extract_Max(weightedMoves);
-    }
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+
+/**
+ * Scores MrX's moves by how far they end from the nearest detective, reading the distances off the
+ * {@link DistanceOracle} of the board's graph instead of searching the graph for every move
+ */
+public final class Dijkstra {
+
+	private Dijkstra() {}
+
+	/**
+	 * @param board the board
+	 * @return the locations of the detectives on the board
+	 */
+	@Nonnull public static int[] detectiveLocations(@Nonnull Board board) {
+		return board.getPlayers().stream()
+				.filter(Piece::isDetective)
+				.map(piece -> board.getDetectiveLocation((Piece.Detective) piece))
+				.flatMap(Optional::stream)
+				.mapToInt(Integer::intValue)
+				.toArray();
+	}
+
+	/**
+	 * @param move the move
+	 * @return the node the move ends on
+	 */
+	public static int destination(@Nonnull Move move) {
+		return move.accept(new Move.FunctionalVisitor<>(m -> m.destination, m -> m.destination2));
+	}
+
+	/**
+	 * @param board the board
+	 * @param moves MrX's moves to choose from, not empty
+	 * @return the first of the moves that ends furthest from the nearest detective
+	 */
+	@Nonnull public static Move findNode(@Nonnull Board board, @Nonnull List<Move> moves) {
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves to choose from");
+		DistanceOracle distances = DistanceOracle.of(board.getSetup());
+		int[] detectives = detectiveLocations(board);
+		Move best = moves.get(0);
+		int bestDistance = -1;
+		for (Move move : moves) {
+			int distance = distances.nearestDetective(destination(move), detectives);
+			if (distance > bestDistance) {
+				best = move;
+				bestDistance = distance;
+			}
+		}
+		return best;
+	}
 }
-
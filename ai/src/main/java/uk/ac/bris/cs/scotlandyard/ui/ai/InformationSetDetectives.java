@@ -0,0 +1,198 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.LocationBelief;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+/**
+ * Detective player that runs an information-set Monte-Carlo tree search on every core until
+ * shortly before its time is up, then plays the most visited move.
+ * <br>
+ * Every iteration places MrX on a node drawn from a {@link LocationBelief} that follows the
+ * travel log. All iterations share one tree of {@link MctsNode}s: a node holds every move seen in
+ * any determinization, and an iteration only picks among the ones legal in its own. Until MrX
+ * next moves, detective nodes are ranked by a prior over the whole belief, so their moves this
+ * round are chosen knowing no more than the detectives do; further down, as in single-observer
+ * ISMCTS, nodes follow the moves MrX actually made in the determinization. MrX's own nodes are
+ * always ranked from where MrX is in the determinization, which MrX knows. Within a round
+ * detectives are searched in a fixed order, which keeps their moves from multiplying by the
+ * orders they could be made in. MrX is handed the move that ends furthest from the detectives.
+ */
+public class InformationSetDetectives implements Ai {
+
+	private static final int FAR = 4; // distance beyond which a detective is no nearer MrX for the prior
+
+	private final int parallelism;
+	private ForkJoinPool pool;
+	private LocationBelief belief; // kept between turns of one game
+	private GameSetup tracked;     // the setup the belief is for
+
+	public InformationSetDetectives() { this(Runtime.getRuntime().availableProcessors()); }
+
+	/**
+	 * @param parallelism the number of search workers
+	 */
+	public InformationSetDetectives(int parallelism) {
+		if (parallelism <= 0) throw new IllegalArgumentException("Parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	@Nonnull @Override public String name() { return "ISMCTS Detectives"; }
+
+	@Override public void onStart() {
+		belief = null;
+		pool();
+	}
+
+	@Override public synchronized void onTerminate() {
+		if (pool != null) pool.shutdownNow();
+		pool = null;
+	}
+
+	private synchronized ForkJoinPool pool() {
+		if (pool == null) pool = new ForkJoinPool(parallelism);
+		return pool;
+	}
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+		long deadline = Budget.deadline(timeoutPair);
+		ImmutableList<Move> moves = board.getAvailableMoves().asList();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves to pick from");
+		if (moves.size() == 1) return moves.get(0);
+		if (moves.get(0).commencedBy().isMrX()) return Dijkstra.findNode(board, moves);
+		if (belief == null || belief.rounds() > board.getMrXTravelLog().size() || tracked != board.getSetup()) {
+			belief = new LocationBelief(board.getSetup());
+			tracked = board.getSetup();
+		}
+		belief.update(board);
+		// built here once, as workers only copy them
+		ImmutableMap.Builder<Integer, SearchState> builder = ImmutableMap.builder();
+		for (int location : belief.distribution().keySet()) {
+			SearchState state = SearchState.of(board, location);
+			if (!state.isGameOver()) builder.put(location, state); // MrX would have been caught already
+		}
+		ImmutableMap<Integer, SearchState> determinizations = builder.build();
+		if (determinizations.isEmpty()) return moves.get(0);
+		SearchState first = determinizations.values().iterator().next();
+		MctsNode root = new MctsNode(null, 0);
+		ImmutableSet<Move> rootMoves = legal(first);
+		ToDoubleFunction<Move> hidden = prior(board.getSetup(), belief.distribution());
+		root.merge(rootMoves, hidden);
+		List<ForkJoinTask<?>> workers = new ArrayList<>(parallelism);
+		long seed = ThreadLocalRandom.current().nextLong();
+		LocationBelief belief = this.belief;
+		for (int i = 0; i < parallelism; i++) {
+			SplittableRandom random = new SplittableRandom(seed + i);
+			workers.add(ForkJoinTask.adapt(() -> search(root, determinizations, belief, hidden, random, deadline)));
+		}
+		pool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(workers)));
+		MctsNode best = root.mostVisited();
+		return best == null || best.visits() == 0 ? root.children()[0].move : best.move; // else highest prior
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @param distribution the probability of MrX being on each node
+	 * @return how promising each detective move looks: the closer it ends to MrX on average over
+	 * the distribution the better
+	 */
+	static ToDoubleFunction<Move> prior(GameSetup setup, Map<Integer, Double> distribution) {
+		DistanceOracle distances = DistanceOracle.of(setup);
+		return move -> {
+			int destination = Dijkstra.destination(move);
+			double expected = 0;
+			for (Map.Entry<Integer, Double> entry : distribution.entrySet())
+				expected += entry.getValue() * Math.min(distances.detectiveDistance(destination, entry.getKey()), FAR);
+			return 1 - expected / FAR;
+		};
+	}
+
+	/**
+	 * @param state a state that is not over
+	 * @return MrX's moves, or the moves of the first detective still to move
+	 */
+	static ImmutableSet<Move> legal(SearchState state) {
+		ImmutableSet<Move> moves = state.getAvailableMoves();
+		if (state.hasAnyMove(Piece.MrX.MRX)) return moves;
+		Piece mover = ScotlandYard.ALL_PIECES.stream().filter(state::hasAnyMove).findFirst().orElseThrow();
+		return moves.stream()
+				.filter(move -> move.commencedBy() == mover)
+				.collect(ImmutableSet.toImmutableSet());
+	}
+
+	/**
+	 * Runs search iterations on the shared tree until the deadline, each on a determinization
+	 * drawn from the belief
+	 *
+	 * @param root the root of the tree, already expanded
+	 * @param determinizations the state at the root for every location MrX could be on
+	 * @param belief the belief to draw MrX's location from
+	 * @param hidden the prior of detective moves made before MrX moves again
+	 * @param random the worker's own random numbers
+	 * @param deadline when to stop, as a {@link System#nanoTime()}
+	 */
+	static void search(MctsNode root, Map<Integer, SearchState> determinizations, LocationBelief belief,
+	                   ToDoubleFunction<Move> hidden, SplittableRandom random, long deadline) {
+		Map<Integer, SearchState> states = new HashMap<>(); // the worker's own copies
+		Playouts playouts = null;
+		MctsNode[] path = new MctsNode[64];
+		while (System.nanoTime() < deadline) {
+			SearchState template = determinizations.get(belief.sample(random));
+			if (template == null) continue;
+			SearchState state = states.computeIfAbsent(template.location(Piece.MrX.MRX), location -> template.copy());
+			if (playouts == null) playouts = new Playouts(state, random);
+			int length = 0;
+			boolean seen = false; // whether MrX moved in the tree, so detective priors may use where MrX is
+			MctsNode node = root;
+			node.visit();
+			path[length++] = node;
+			while (!state.isGameOver()) {
+				if (node.children() == null && node.visits() < MonteCarloMrX.EXPAND_AFTER) break;
+				ImmutableSet<Move> legal = legal(state);
+				boolean mrXToMove = state.hasAnyMove(Piece.MrX.MRX);
+				MctsNode[] children = node.covers(legal)
+						? node.children()
+						: node.merge(legal, seen || mrXToMove ? MonteCarloMrX.prior(state) : hidden);
+				node = node.select(children, legal, MonteCarloMrX.EXPLORATION, MonteCarloMrX.PRIOR_WEIGHT);
+				if (node == null) throw new IllegalStateException("No legal child on " + state);
+				node.visit();
+				state.apply(node.move);
+				seen |= node.byMrX;
+				if (length == path.length) path = Arrays.copyOf(path, length * 2);
+				path[length++] = node;
+			}
+			boolean mrXWon = state.isGameOver()
+					? state.getWinner().contains(Piece.MrX.MRX)
+					: playouts.play(state);
+			for (int i = 1; i < length; i++)
+				if (path[i].byMrX == mrXWon) path[i].win();
+			while (state.depth() > 0) state.undo();
+		}
+	}
+
+}
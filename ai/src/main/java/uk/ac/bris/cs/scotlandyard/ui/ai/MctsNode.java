@@ -0,0 +1,162 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+/**
+ * A node of a Monte-Carlo search tree that many threads descend at once without locking.
+ * <br>
+ * Visits and wins share one {@code long} so both are read and updated atomically. A thread counts
+ * its visit on the way down and only adds the win once its playout finishes, so until then the
+ * visit reads as a loss: this virtual loss steers the other threads to different children. Wins
+ * are counted for the side that made the move into the node. Children are made by whichever
+ * thread expands the node first.
+ * <br>
+ * Every child carries a prior in [0, 1] from a cheap heuristic. Children are kept in descending
+ * order of their prior and only the first {@code 2 + sqrt(visits)} of them are considered, so the
+ * search widens as a node is visited more (progressive widening). The prior also adds a bias to
+ * the UCT value that fades as the child is visited.
+ * <br>
+ * For an information-set search, where the moves of a node depend on where MrX is assumed to be,
+ * {@link #merge(Set, ToDoubleFunction)} adds children for moves not seen before and
+ * {@link #select(MctsNode[], Set, double, double)} only considers the children legal in the
+ * current determinization, counting how often each was legal in place of the parent's visits.
+ */
+final class MctsNode {
+
+	private static final AtomicLongFieldUpdater<MctsNode> STATS =
+			AtomicLongFieldUpdater.newUpdater(MctsNode.class, "stats");
+	private static final AtomicReferenceFieldUpdater<MctsNode, MctsNode[]> CHILDREN =
+			AtomicReferenceFieldUpdater.newUpdater(MctsNode.class, MctsNode[].class, "children");
+	private static final AtomicIntegerFieldUpdater<MctsNode> AVAILABLE =
+			AtomicIntegerFieldUpdater.newUpdater(MctsNode.class, "available");
+	private static final long VISIT = 1L << 32;
+	private static final double UNVISITED = 1e6; // above any UCT value, so unvisited children go first
+
+	final Move move;      // the move into this node, null at the root
+	final boolean byMrX;  // whether MrX made the move
+	final double prior;
+	private volatile long stats; // visits << 32 | wins
+	private volatile MctsNode[] children;
+	private volatile int available; // selections this node was legal in, for information-set search
+
+	MctsNode(@Nullable Move move, double prior) {
+		this.move = move;
+		this.byMrX = move != null && move.commencedBy().isMrX();
+		this.prior = prior;
+	}
+
+	int visits() { return (int) (stats >>> 32); }
+
+	int wins() { return (int) stats; }
+
+	void visit() { STATS.addAndGet(this, VISIT); }
+
+	void win() { STATS.incrementAndGet(this); }
+
+	@Nullable MctsNode[] children() { return children; }
+
+	MctsNode[] expand(SearchState state, ToDoubleFunction<Move> prior) {
+		MctsNode[] expanded = children;
+		if (expanded != null) return expanded;
+		expanded = state.getAvailableMoves().stream()
+				.map(move -> new MctsNode(move, prior.applyAsDouble(move)))
+				.sorted(Comparator.comparingDouble((MctsNode node) -> node.prior).reversed())
+				.toArray(MctsNode[]::new);
+		CHILDREN.compareAndSet(this, null, expanded); // a thread that lost the race takes the winner's children
+		return children;
+	}
+
+	// UCT with a fading prior over the widened children, unvisited children first
+	MctsNode select(MctsNode[] children, double exploration, double priorWeight) {
+		int visits = visits();
+		double logVisits = Math.log(Math.max(1, visits));
+		int width = Math.min(children.length, 2 + (int) Math.sqrt(visits));
+		MctsNode best = children[0];
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < width; i++) {
+			MctsNode child = children[i];
+			long stats = child.stats;
+			int childVisits = (int) (stats >>> 32);
+			double value = childVisits == 0
+					? UNVISITED + child.prior
+					: (double) (int) stats / childVisits + exploration * Math.sqrt(logVisits / childVisits)
+							+ priorWeight * child.prior / (childVisits + 1);
+			if (value > bestValue) {
+				best = child;
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+
+	// whether every one of the moves has a child
+	boolean covers(Set<Move> moves) {
+		MctsNode[] children = this.children;
+		if (children == null) return false;
+		int covered = 0;
+		for (MctsNode child : children) if (moves.contains(child.move)) covered++;
+		return covered == moves.size();
+	}
+
+	MctsNode[] merge(Set<Move> moves, ToDoubleFunction<Move> prior) {
+		while (true) {
+			MctsNode[] current = children;
+			MctsNode[] known = current == null ? new MctsNode[0] : current;
+			Set<Move> seen = Arrays.stream(known).map(child -> child.move).collect(Collectors.toSet());
+			MctsNode[] merged = Stream.concat(Arrays.stream(known), moves.stream()
+							.filter(move -> !seen.contains(move))
+							.map(move -> new MctsNode(move, prior.applyAsDouble(move))))
+					.sorted(Comparator.comparingDouble((MctsNode node) -> node.prior).reversed())
+					.toArray(MctsNode[]::new);
+			if (CHILDREN.compareAndSet(this, current, merged)) return merged; // else merge into the winner's
+		}
+	}
+
+	// as above, over the widened children that are legal, with how often each was legal for the visits
+	@Nullable MctsNode select(MctsNode[] children, Set<Move> legal, double exploration, double priorWeight) {
+		int width = 2 + (int) Math.sqrt(visits());
+		int considered = 0;
+		MctsNode best = null;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (MctsNode child : children) {
+			if (!legal.contains(child.move)) continue;
+			if (considered++ == width) break;
+			double logAvailable = Math.log(AVAILABLE.incrementAndGet(child));
+			long stats = child.stats;
+			int childVisits = (int) (stats >>> 32);
+			double value = childVisits == 0
+					? UNVISITED + child.prior
+					: (double) (int) stats / childVisits + exploration * Math.sqrt(logAvailable / childVisits)
+							+ priorWeight * child.prior / (childVisits + 1);
+			if (value > bestValue) {
+				best = child;
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+
+	@Nullable MctsNode mostVisited() {
+		MctsNode[] children = this.children;
+		if (children == null) return null;
+		MctsNode best = null;
+		for (MctsNode child : children)
+			if (best == null || child.visits() > best.visits()) best = child;
+		return best;
+	}
+
+	@Override public String toString() { return move + " " + wins() + "/" + visits(); }
+}
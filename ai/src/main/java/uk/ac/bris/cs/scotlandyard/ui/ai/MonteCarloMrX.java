@@ -0,0 +1,149 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+/**
+ * MrX player that runs a Monte-Carlo tree search on every core until shortly before its time is
+ * up, then plays the most visited move.
+ * <br>
+ * All workers share one tree of {@link MctsNode}s and each walks it with its own
+ * {@link SearchState}, applying moves on the way down and undoing them after the playout, so a
+ * worker allocates little besides the nodes it expands. MrX sees the whole board, so the search
+ * needs no guessing; detectives are handed a random move.
+ */
+public class MonteCarloMrX implements Ai {
+
+	static final double EXPLORATION = 0.7;
+	static final double PRIOR_WEIGHT = 1.0;
+	private static final double DOUBLE_PENALTY = 0.25; // taken off the prior of a double move
+	private static final int FAR = 4;                  // distance beyond which moving further does not help the prior
+	static final int EXPAND_AFTER = 2;                 // visits a node needs before its children are made
+
+	private final int parallelism;
+	private ForkJoinPool pool;
+
+	public MonteCarloMrX() { this(Runtime.getRuntime().availableProcessors()); }
+
+	/**
+	 * @param parallelism the number of search workers
+	 */
+	public MonteCarloMrX(int parallelism) {
+		if (parallelism <= 0) throw new IllegalArgumentException("Parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	@Nonnull @Override public String name() { return "Monte Carlo MrX"; }
+
+	@Override public void onStart() { pool(); }
+
+	@Override public synchronized void onTerminate() {
+		if (pool != null) pool.shutdownNow();
+		pool = null;
+	}
+
+	private synchronized ForkJoinPool pool() {
+		if (pool == null) pool = new ForkJoinPool(parallelism);
+		return pool;
+	}
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+		long deadline = Budget.deadline(timeoutPair);
+		ImmutableList<Move> moves = board.getAvailableMoves().asList();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves to pick from");
+		if (moves.size() == 1) return moves.get(0);
+		if (!moves.get(0).commencedBy().isMrX())
+			return moves.get(ThreadLocalRandom.current().nextInt(moves.size()));
+		SearchState state = SearchState.of(board, moves.get(0).source());
+		MctsNode root = new MctsNode(null, 0);
+		root.expand(state, prior(state));
+		List<ForkJoinTask<?>> workers = new ArrayList<>(parallelism);
+		long seed = ThreadLocalRandom.current().nextLong();
+		for (int i = 0; i < parallelism; i++) {
+			SearchState copy = state.copy();
+			SplittableRandom random = new SplittableRandom(seed + i);
+			workers.add(ForkJoinTask.adapt(() -> search(root, copy, random, deadline)));
+		}
+		pool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(workers)));
+		MctsNode best = root.mostVisited();
+		return best == null || best.visits() == 0 ? Dijkstra.findNode(board, moves) : best.move;
+	}
+
+	/**
+	 * @param state the state the moves are made on
+	 * @return how promising each move of the state looks: for MrX the further it ends from the
+	 * nearest detective the better, for a detective the closer it ends to MrX
+	 */
+	static ToDoubleFunction<Move> prior(SearchState state) {
+		DistanceOracle distances = DistanceOracle.of(state.getSetup());
+		int mrX = state.location(Piece.MrX.MRX);
+		int[] detectives = state.getPlayers().stream()
+				.filter(Piece::isDetective)
+				.mapToInt(state::location)
+				.toArray();
+		return move -> {
+			int destination = Dijkstra.destination(move);
+			if (move.commencedBy().isDetective())
+				return 1 - (double) Math.min(distances.detectiveDistance(destination, mrX), FAR) / FAR;
+			double prior = (double) Math.min(distances.nearestDetective(destination, detectives), FAR) / FAR;
+			return move instanceof Move.DoubleMove ? Math.max(0, prior - DOUBLE_PENALTY) : prior;
+		};
+	}
+
+	/**
+	 * Runs search iterations on the shared tree until the deadline
+	 *
+	 * @param root the root of the tree, already expanded
+	 * @param state the worker's own state at the root
+	 * @param random the worker's own random numbers
+	 * @param deadline when to stop, as a {@link System#nanoTime()}
+	 */
+	static void search(MctsNode root, SearchState state, SplittableRandom random, long deadline) {
+		Playouts playouts = new Playouts(state, random);
+		MctsNode[] path = new MctsNode[64];
+		while (System.nanoTime() < deadline) {
+			int length = 0;
+			MctsNode node = root;
+			node.visit();
+			path[length++] = node;
+			while (!state.isGameOver()) {
+				MctsNode[] children = node.children();
+				if (children == null) {
+					if (node.visits() < EXPAND_AFTER) break;
+					children = node.expand(state, prior(state));
+				}
+				node = node.select(children, EXPLORATION, PRIOR_WEIGHT);
+				node.visit();
+				state.apply(node.move);
+				if (length == path.length) path = Arrays.copyOf(path, length * 2);
+				path[length++] = node;
+			}
+			boolean mrXWon = state.isGameOver()
+					? state.getWinner().contains(Piece.MrX.MRX)
+					: playouts.play(state);
+			for (int i = 1; i < length; i++)
+				if (path[i].byMrX == mrXWon) path[i].win();
+			while (state.depth() > 0) state.undo();
+		}
+	}
+
+}
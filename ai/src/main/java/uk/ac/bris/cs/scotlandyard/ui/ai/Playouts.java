@@ -0,0 +1,104 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.SplittableRandom;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.CompiledGraph;
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MoveSink;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+/**
+ * Plays a {@link SearchState} to the end with a cheap distance-guided policy: MrX moves away from
+ * the nearest detective and detectives move towards MrX, each picking a uniformly random move
+ * instead now and then. Detectives pick at random more often, since the policy lets them see
+ * where MrX is. Double moves are never played, which leaves MrX's double tickets to the
+ * moves the tree search makes.
+ * <br>
+ * Moves are chosen straight from {@link SearchState#generateMoves(MoveSink)}, so the only
+ * allocation per ply is the chosen {@link Move}. Instances are not thread safe; every search
+ * thread needs its own.
+ */
+final class Playouts implements MoveSink {
+
+	private static final int MRX = ScotlandYard.ALL_PIECES.indexOf(Piece.MrX.MRX);
+	private static final double MRX_EXPLORE = 0.2;       // chance of a uniformly random move
+	private static final double DETECTIVE_EXPLORE = 0.5;
+
+	private final DistanceOracle distances;
+	private final SplittableRandom random;
+	private final Piece[] detectives;
+	private final int[] detectiveLocations;
+
+	// the move being chosen
+	private boolean greedy;
+	private int mrXLocation;
+	private int bestScore;
+	private int seen;
+	private int piece, source, ticket, destination;
+
+	Playouts(@Nonnull SearchState state, @Nonnull SplittableRandom random) {
+		this.distances = DistanceOracle.of(state.getSetup());
+		this.random = random;
+		this.detectives = state.getPlayers().stream().filter(Piece::isDetective).toArray(Piece[]::new);
+		this.detectiveLocations = new int[detectives.length];
+	}
+
+	/**
+	 * Plays the state to the end, leaving the moves on it for the caller to undo
+	 *
+	 * @param state the state
+	 * @return whether MrX won
+	 */
+	boolean play(@Nonnull SearchState state) {
+		while (!state.isGameOver()) state.apply(choose(state));
+		return state.getWinner().contains(Piece.MrX.MRX);
+	}
+
+	/**
+	 * @param state a state that is not over
+	 * @return the move the policy plays on the state
+	 */
+	@Nonnull Move choose(@Nonnull SearchState state) {
+		mrXLocation = state.location(Piece.MrX.MRX);
+		for (int i = 0; i < detectives.length; i++) detectiveLocations[i] = state.location(detectives[i]);
+		greedy = random.nextDouble() >= (state.hasAnyMove(Piece.MrX.MRX) ? MRX_EXPLORE : DETECTIVE_EXPLORE);
+		bestScore = Integer.MIN_VALUE;
+		seen = 0;
+		state.generateMoves(this);
+		if (seen == 0) throw new IllegalStateException("No move to play on " + state);
+		return new Move.SingleMove(ScotlandYard.ALL_PIECES.get(piece), source,
+				CompiledGraph.ticket(ticket), destination);
+	}
+
+	private int score(int piece, int destination) {
+		return piece == MRX
+				? distances.nearestDetective(destination, detectiveLocations)
+				: -distances.detectiveDistance(destination, mrXLocation);
+	}
+
+	// keeps the move with probability 1 / seen among the moves tied for the best score so far
+	private boolean keep(int score) {
+		if (greedy && score < bestScore) return false;
+		if (greedy && score > bestScore) {
+			bestScore = score;
+			seen = 0;
+		}
+		return random.nextInt(++seen) == 0;
+	}
+
+	@Override public void single(int piece, int source, int ticket, int destination) {
+		if (!keep(greedy ? score(piece, destination) : 0)) return;
+		this.piece = piece;
+		this.source = source;
+		this.ticket = ticket;
+		this.destination = destination;
+	}
+
+	@Override public void doubleMove(int piece, int source, int ticket1, int destination1,
+	                                 int ticket2, int destination2) {}
+}
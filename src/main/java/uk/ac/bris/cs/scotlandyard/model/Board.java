@@ -1,9 +1,12 @@
 package uk.ac.bris.cs.scotlandyard.model;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import javax.annotation.Nonnull;
 
@@ -58,6 +61,37 @@ public interface Board {
 	 * This is mutually exclusive with {@link #getWinner()}
 	 */
 	@Nonnull ImmutableSet<Move> getAvailableMoves();
+	/**
+	 * @param piece the piece
+	 * @return the moves of {@link #getAvailableMoves()} made by the given piece; empty if it is
+	 * not the piece's turn or the piece is not part of the game. Implementations should override
+	 * this to only generate the given piece's moves.
+	 */
+	@Nonnull default ImmutableSet<Move> getAvailableMoves(@Nonnull Piece piece) {
+		return getAvailableMoves().stream()
+				.filter(move -> move.commencedBy().equals(piece))
+				.collect(ImmutableSet.toImmutableSet());
+	}
+	/**
+	 * @return the pieces with at least one move in {@link #getAvailableMoves()}; empty if the game
+	 * is over. Implementations should override this to answer without generating the moves.
+	 */
+	@Nonnull default ImmutableSet<Piece> getPiecesToMove() {
+		return getAvailableMoves().stream()
+				.map(Move::commencedBy)
+				.collect(ImmutableSet.toImmutableSet());
+	}
+	/**
+	 * @return the number of moves in {@link #getAvailableMoves()}. Implementations should override
+	 * this to count the moves without making them.
+	 */
+	default int countAvailableMoves() { return getAvailableMoves().size(); }
+	/**
+	 * @param piece the piece
+	 * @return whether the given piece has at least one move in {@link #getAvailableMoves()}.
+	 * Implementations should override this to stop at the first move found.
+	 */
+	default boolean hasAnyMove(@Nonnull Piece piece) { return getPiecesToMove().contains(piece); }
 
 
 	/**
@@ -74,6 +108,81 @@ public interface Board {
 		 * {@link #getAvailableMoves()}
 		 */
 		@Nonnull GameState advance(Move move);
+		/**
+		 * Advances this state by every move of {@link #getAvailableMoves()} at once.
+		 * Implementations should override this to share the work that every child repeats and to
+		 * skip checking moves they generated themselves; the default calls
+		 * {@link #advance(Move)} for each move.
+		 *
+		 * @return each available move mapped to the state after it, in the order of
+		 * {@link #getAvailableMoves()}; empty if the game is over
+		 */
+		@Nonnull default ImmutableMap<Move, GameState> advanceAll() {
+			ImmutableSet<Move> moves = getAvailableMoves();
+			ImmutableMap.Builder<Move, GameState> children = ImmutableMap.builderWithExpectedSize(moves.size());
+			for (Move move : moves) children.put(move, advance(move));
+			return children.build();
+		}
+		/**
+		 * Like {@link #advanceAll()} but makes the children in parallel on the given pool, which
+		 * pays off for MrX's turns with thousands of moves
+		 *
+		 * @param pool the pool to make the children on
+		 * @return each available move mapped to the state after it, in the order of
+		 * {@link #getAvailableMoves()}; empty if the game is over
+		 */
+		@Nonnull default ImmutableMap<Move, GameState> advanceAll(@Nonnull ForkJoinPool pool) {
+			ImmutableList<Move> moves = getAvailableMoves().asList();
+			GameState[] children = pool.invoke(ForkJoinTask.adapt(() -> moves.parallelStream()
+					.map(this::advance)
+					.toArray(GameState[]::new)));
+			ImmutableMap.Builder<Move, GameState> builder = ImmutableMap.builderWithExpectedSize(moves.size());
+			for (int i = 0; i < children.length; i++) builder.put(moves.get(i), children[i]);
+			return builder.build();
+		}
+		/**
+		 * Pushes every move of {@link #getAvailableMoves()} into the given sink, once each and in
+		 * no particular order. Implementations should override this to generate moves without
+		 * allocating; the default goes through {@link #getAvailableMoves()}.
+		 *
+		 * @param sink the sink
+		 */
+		default void generateMoves(@Nonnull MoveSink sink) {
+			for (Move move : getAvailableMoves()) sink.accept(move);
+		}
+		/**
+		 * A 64-bit key of this position over every piece's location and tickets, the pieces still
+		 * to move and the round, see {@link Zobrist}. Equal positions have equal keys, so the key
+		 * can index a transposition table. Implementations should override this to keep the key up
+		 * to date as moves are made; the default recomputes it from what a {@link Board} exposes,
+		 * which leaves out MrX's location.
+		 *
+		 * @return the key of this position
+		 */
+		default long zobristKey() { return Zobrist.of(this); }
+		/**
+		 * Like {@link #zobristKey()} but the same for positions that only differ in which
+		 * detective is which: detectives are told apart by where they stand, what tickets they
+		 * hold and whether they are still to move, never by colour. A transposition table keyed by
+		 * this shares entries between such positions, so anything stored that names a detective,
+		 * such as a best move, has to be carried over with {@link #canonicalDetectives()} and
+		 * {@link Zobrist#recolour(Move, java.util.List, java.util.List)}. The default recomputes the key from what a
+		 * {@link Board} exposes, which leaves out MrX's location.
+		 *
+		 * @return the canonical key of this position
+		 */
+		default long canonicalKey() { return Zobrist.canonical(this); }
+		/**
+		 * The detectives in canonical order, which is by location since no two detectives share
+		 * one. Positions with the same {@link #canonicalKey()} have a detective with the same
+		 * location and tickets at every index, so the index maps a detective of one position to
+		 * its counterpart in the other.
+		 *
+		 * @return the detectives sorted by location
+		 */
+		@Nonnull default ImmutableList<Detective> canonicalDetectives() {
+			return Zobrist.canonicalDetectives(this);
+		}
 	}
 
 
@@ -0,0 +1,196 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ValueGraph;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A compact, int-indexed copy of the ScotlandYard game graph for hot move generation loops.
+ * <br>
+ * Nodes are renumbered to dense indices {@code 0..nodeCount()-1} in ascending node order and the
+ * adjacency is stored in compressed-sparse-row form: the edges of node {@code i} are
+ * {@code edgeStart(i)..edgeEnd(i)-1}, each with a target index and a transport bitmask. Nothing
+ * here boxes or hashes, so lookups are plain array reads.
+ * <br>
+ * Use {@link GameSetup#compiledGraph()} to get the instance cached on a setup.
+ */
+public final class CompiledGraph {
+
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	private final int minNode;
+	private final int[] denseIndex; // node - minNode -> index, -1 if absent; empty when too sparse
+	private final int[] nodes;      // index -> node
+	private final int[] offsets;    // index -> first edge, length nodeCount + 1
+	private final int[] targets;    // edge -> target index
+	private final int[] targetNodes;// edge -> target node
+	private final byte[] transports;// edge -> Transport bitmask
+	private final byte[] tickets;   // edge -> Ticket bitmask of the tickets the transports require
+	private volatile MoveTable moveTable;
+	private volatile DistanceOracle distances;
+
+	private CompiledGraph(int[] nodes, int[] offsets, int[] targets, byte[] transports) {
+		this.nodes = nodes;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.transports = transports;
+		this.minNode = nodes.length == 0 ? 0 : nodes[0];
+		long span = nodes.length == 0 ? 0 : (long) nodes[nodes.length - 1] - minNode + 1;
+		if (span <= 4L * nodes.length + 1024) {
+			this.denseIndex = new int[(int) span];
+			Arrays.fill(denseIndex, -1);
+			for (int i = 0; i < nodes.length; i++) denseIndex[nodes[i] - minNode] = i;
+		} else this.denseIndex = null;
+		this.targetNodes = new int[targets.length];
+		this.tickets = new byte[targets.length];
+		for (int e = 0; e < targets.length; e++) {
+			targetNodes[e] = nodes[targets[e]];
+			tickets[e] = (byte) ticketMask(transports[e]);
+		}
+	}
+
+	/**
+	 * @param graph the game graph
+	 * @return a compiled copy of the given graph
+	 */
+	@Nonnull public static CompiledGraph compile(
+			@Nonnull ValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		int[] nodes = Objects.requireNonNull(graph).nodes().stream()
+				.mapToInt(Integer::intValue).sorted().toArray();
+		int[] offsets = new int[nodes.length + 1];
+		int edgeCount = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			offsets[i] = edgeCount;
+			edgeCount += graph.adjacentNodes(nodes[i]).size();
+		}
+		offsets[nodes.length] = edgeCount;
+
+		int[] targets = new int[edgeCount];
+		byte[] transports = new byte[edgeCount];
+		for (int i = 0; i < nodes.length; i++) {
+			int[] adjacent = graph.adjacentNodes(nodes[i]).stream()
+					.mapToInt(Integer::intValue).sorted().toArray();
+			for (int j = 0; j < adjacent.length; j++) {
+				int e = offsets[i] + j;
+				targets[e] = Arrays.binarySearch(nodes, adjacent[j]);
+				for (Transport t : graph.edgeValueOrDefault(nodes[i], adjacent[j], ImmutableSet.of()))
+					transports[e] |= 1 << t.ordinal();
+			}
+		}
+		return new CompiledGraph(nodes, offsets, targets, transports);
+	}
+
+	/**
+	 * @param transports a {@link Transport} bitmask
+	 * @return the {@link Ticket} bitmask of the tickets required by the given transports
+	 */
+	public static int ticketMask(int transports) {
+		int mask = 0;
+		for (Transport t : Transport.values())
+			if ((transports & (1 << t.ordinal())) != 0) mask |= 1 << t.requiredTicket().ordinal();
+		return mask;
+	}
+
+	/**
+	 * @param ordinal the ticket ordinal, usually the lowest set bit of a ticket bitmask
+	 * @return the ticket with the given ordinal, without the array copy of {@link Ticket#values()}
+	 */
+	@Nonnull public static Ticket ticket(int ordinal) { return TICKETS[ordinal]; }
+
+	/**
+	 * @return the number of nodes
+	 */
+	public int nodeCount() { return nodes.length; }
+	/**
+	 * @return the number of directed edges, each undirected edge is counted from both ends
+	 */
+	public int edgeCount() { return targets.length; }
+	/**
+	 * @param node the node
+	 * @return the dense index of the given node; -1 if the node is not in the graph
+	 */
+	public int indexOf(int node) {
+		if (denseIndex != null) {
+			long slot = (long) node - minNode;
+			return slot < 0 || slot >= denseIndex.length ? -1 : denseIndex[(int) slot];
+		}
+		int index = Arrays.binarySearch(nodes, node);
+		return index < 0 ? -1 : index;
+	}
+	/**
+	 * @param index the dense index
+	 * @return the node at the given index
+	 */
+	public int nodeAt(int index) { return nodes[index]; }
+	/**
+	 * @param index the dense index of the source node
+	 * @return the first edge of the given node
+	 */
+	public int edgeStart(int index) { return offsets[index]; }
+	/**
+	 * @param index the dense index of the source node
+	 * @return one past the last edge of the given node
+	 */
+	public int edgeEnd(int index) { return offsets[index + 1]; }
+	/**
+	 * @param edge the edge
+	 * @return the dense index of the node the edge leads to
+	 */
+	public int target(int edge) { return targets[edge]; }
+	/**
+	 * @param edge the edge
+	 * @return the node the edge leads to
+	 */
+	public int targetNode(int edge) { return targetNodes[edge]; }
+	/**
+	 * @param index the dense index of the source node
+	 * @param node the node to go to
+	 * @return the edge from the given index to the given node; -1 if they are not adjacent
+	 */
+	public int edgeTo(int index, int node) {
+		int edge = Arrays.binarySearch(targetNodes, offsets[index], offsets[index + 1], node);
+		return edge < 0 ? -1 : edge;
+	}
+	/**
+	 * @param edge the edge
+	 * @return the transports of the edge as a bitmask of {@link Transport#ordinal()}s
+	 */
+	public int transports(int edge) { return transports[edge]; }
+	/**
+	 * @param edge the edge
+	 * @return the tickets accepted by the edge as a bitmask of {@link Ticket#ordinal()}s, not
+	 * counting {@link Ticket#SECRET} on edges without a ferry
+	 */
+	public int tickets(int edge) { return tickets[edge]; }
+	/**
+	 * @return the table of every move on this graph, built on first use and cached here
+	 */
+	@Nonnull public MoveTable moveTable() {
+		MoveTable table = moveTable;
+		if (table == null) synchronized (this) { // one table per graph, so moves compare by identity
+			table = moveTable;
+			if (table == null) moveTable = table = MoveTable.build(this);
+		}
+		return table;
+	}
+
+	/**
+	 * @return the hop distances between the nodes of this graph, made on first use and cached
+	 * here; the distances themselves are only worked out when first asked for
+	 */
+	@Nonnull public DistanceOracle distances() {
+		DistanceOracle oracle = distances;
+		if (oracle == null) synchronized (this) {
+			oracle = distances;
+			if (oracle == null) distances = oracle = new DistanceOracle(this);
+		}
+		return oracle;
+	}
+}
@@ -0,0 +1,154 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * All-pairs hop distances of a {@link CompiledGraph}, for evaluation terms like the distance from
+ * MrX to the nearest detective.
+ * <br>
+ * Each network is a subset of the edges: every edge, the edges detectives can use (anything but a
+ * ferry-only edge) or the edges of one {@link Transport}. The distances of a network are a
+ * {@code nodeCount * nodeCount} matrix of unsigned bytes, filled by one breadth-first search per
+ * node the first time the network is asked for; 199 nodes take about 40 KB per network. Distances
+ * are symmetric because the graph is undirected. Once filled a matrix is never written, so an
+ * oracle can be shared between threads.
+ * <br>
+ * Use {@link CompiledGraph#distances()} to get the instance cached on a graph.
+ */
+public final class DistanceOracle {
+
+	/**
+	 * The distance between nodes with no path between them in the network, or that are not in the
+	 * graph. Distances that do not fit below it are capped one below it.
+	 */
+	public static final int UNREACHABLE = 0xFF;
+
+	private static final int ALL = 0;
+	private static final int DETECTIVE = 1;
+	private static final int TRANSPORT = 2; // first of one network per transport, by ordinal
+	private static final Transport[] TRANSPORTS = Transport.values();
+
+	private final CompiledGraph graph;
+	private final int nodeCount;
+	private final AtomicReferenceArray<byte[]> matrices; // network -> from index * nodeCount + to index -> distance, filled on first use
+
+	DistanceOracle(CompiledGraph graph) {
+		this.graph = graph;
+		this.nodeCount = graph.nodeCount();
+		this.matrices = new AtomicReferenceArray<>(TRANSPORT + TRANSPORTS.length);
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @return the oracle of the setup's graph
+	 */
+	@Nonnull public static DistanceOracle of(@Nonnull GameSetup setup) {
+		return setup.compiledGraph().distances();
+	}
+
+	private static int transportsOf(int network) {
+		if (network == ALL) return -1;
+		if (network == DETECTIVE) return ~(1 << Transport.FERRY.ordinal());
+		return 1 << TRANSPORTS[network - TRANSPORT].ordinal();
+	}
+
+	private byte[] matrix(int network) {
+		byte[] matrix = matrices.get(network);
+		if (matrix != null) return matrix;
+		matrices.compareAndSet(network, null, fill(transportsOf(network))); // threads racing here fill the same matrix, one of them is kept
+		return matrices.get(network);
+	}
+
+	private byte[] fill(int transports) {
+		byte[] matrix = new byte[nodeCount * nodeCount];
+		Arrays.fill(matrix, (byte) UNREACHABLE);
+		int[] queue = new int[nodeCount];
+		for (int source = 0; source < nodeCount; source++) {
+			int row = source * nodeCount;
+			matrix[row + source] = 0;
+			int head = 0, tail = 0;
+			queue[tail++] = source;
+			while (head < tail) {
+				int index = queue[head++];
+				int next = Math.min((matrix[row + index] & 0xFF) + 1, UNREACHABLE - 1);
+				for (int e = graph.edgeStart(index); e < graph.edgeEnd(index); e++) {
+					int target = graph.target(e);
+					if ((graph.transports(e) & transports) == 0
+							|| (matrix[row + target] & 0xFF) != UNREACHABLE) continue;
+					matrix[row + target] = (byte) next;
+					queue[tail++] = target;
+				}
+			}
+		}
+		return matrix;
+	}
+
+	private int distance(int network, int from, int to) {
+		int fromIndex = graph.indexOf(from);
+		int toIndex = graph.indexOf(to);
+		if (fromIndex < 0 || toIndex < 0) return UNREACHABLE;
+		return matrix(network)[fromIndex * nodeCount + toIndex] & 0xFF;
+	}
+
+	/**
+	 * @param from the node to start from
+	 * @param to the node to reach
+	 * @return the fewest edges of any transport between the nodes, as MrX with secret tickets
+	 * sees them; {@link #UNREACHABLE} if there is no path
+	 */
+	public int distance(int from, int to) { return distance(ALL, from, to); }
+
+	/**
+	 * @param from the node to start from
+	 * @param to the node to reach
+	 * @return the fewest edges between the nodes that a detective can use, ignoring how many
+	 * tickets the detective has; {@link #UNREACHABLE} if there is no path
+	 */
+	public int detectiveDistance(int from, int to) { return distance(DETECTIVE, from, to); }
+
+	/**
+	 * @param transport the transport
+	 * @param from the node to start from
+	 * @param to the node to reach
+	 * @return the fewest edges of the given transport between the nodes;
+	 * {@link #UNREACHABLE} if there is no path
+	 */
+	public int distance(@Nonnull Transport transport, int from, int to) {
+		return distance(TRANSPORT + transport.ordinal(), from, to);
+	}
+
+	/**
+	 * Like {@link #detectiveDistance(int, int)} but for dense indices of the
+	 * {@link CompiledGraph}, for loops that already work with them
+	 *
+	 * @param fromIndex the dense index to start from
+	 * @param toIndex the dense index to reach
+	 * @return the fewest edges between the nodes that a detective can use
+	 */
+	public int detectiveDistanceByIndex(int fromIndex, int toIndex) {
+		return matrix(DETECTIVE)[fromIndex * nodeCount + toIndex] & 0xFF;
+	}
+
+	/**
+	 * @param node the node, usually MrX's location
+	 * @param detectives the locations of the detectives
+	 * @return the fewest edges a detective can use from the nearest detective to the node;
+	 * {@link #UNREACHABLE} if there are no detectives or none can reach the node
+	 */
+	public int nearestDetective(int node, @Nonnull int[] detectives) {
+		int index = graph.indexOf(node);
+		if (index < 0) return UNREACHABLE;
+		byte[] matrix = matrix(DETECTIVE);
+		int nearest = UNREACHABLE;
+		for (int detective : detectives) {
+			int from = graph.indexOf(detective);
+			if (from >= 0) nearest = Math.min(nearest, matrix[from * nodeCount + index] & 0xFF);
+		}
+		return nearest;
+	}
+}
@@ -25,11 +25,23 @@ public final class GameSetup implements Serializable {
 	 * MrX reveal moves; false is hidden, true is reveal
 	 */
 	public final ImmutableList<Boolean> moves;
+	private transient volatile CompiledGraph compiledGraph;
 	public GameSetup(@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
 	                 @Nonnull ImmutableList<Boolean> moves) {
 		this.graph = Objects.requireNonNull(graph);
 		this.moves = Objects.requireNonNull(moves);
 	}
+	/**
+	 * @return the compiled form of {@link #graph}, built on first use and cached on this setup
+	 */
+	@Nonnull public CompiledGraph compiledGraph() {
+		CompiledGraph compiled = compiledGraph;
+		if (compiled == null) synchronized (this) {
+			compiled = compiledGraph;
+			if (compiled == null) compiledGraph = compiled = CompiledGraph.compile(graph);
+		}
+		return compiled;
+	}
 	@Override public boolean equals(Object o) {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
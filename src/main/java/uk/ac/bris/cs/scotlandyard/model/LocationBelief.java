@@ -0,0 +1,388 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.TicketBoard;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A weighted guess of where MrX is, kept as a cloud of particles that follows the travel log.
+ * <br>
+ * Where {@link PossibleLocations} only says which nodes MrX could be on, every particle here also
+ * carries a weight for how likely MrX was to log the tickets it did from where the particle was.
+ * For a hidden entry a particle on a node is weighted by the share of MrX's moves from that node
+ * that use the logged ticket, counting only tickets MrX still held then, and moved along one of
+ * those moves. A {@link Behaviour} says how much MrX favours each move; by default every move is
+ * as likely. A reveal puts every particle on the revealed node. Particles on nodes detectives
+ * stand on are dropped, and the cloud is resampled once too few particles carry most of the weight.
+ * <br>
+ * If every particle is ruled out, the particles are spread again over the nodes a
+ * {@link PossibleLocations} kept alongside still allows.
+ * <br>
+ * Updating is not thread safe, but once updated {@link #sample(RandomGenerator)} and the other
+ * queries only read, so many threads may sample at once.
+ */
+public final class LocationBelief implements Model.Observer {
+
+	/**
+	 * How much MrX favours each of the single moves MrX could make
+	 */
+	@FunctionalInterface public interface Behaviour {
+		/**
+		 * Every move is as likely
+		 */
+		Behaviour UNIFORM = (source, ticket, destination) -> 1;
+		/**
+		 * @param source the node MrX moves from
+		 * @param ticket the ticket MrX uses
+		 * @param destination the node MrX moves to
+		 * @return a weight &gt;= 0 relative to the other moves from the same node
+		 */
+		double weight(int source, @Nonnull Ticket ticket, int destination);
+	}
+
+	public static final int DEFAULT_PARTICLES = 4096;
+
+	private static final int SECRET = 1 << Ticket.SECRET.ordinal();
+	private static final int DOUBLE = Ticket.DOUBLE.ordinal();
+	private static final int HANDED = 1 << Ticket.TAXI.ordinal() | 1 << Ticket.BUS.ordinal()
+			| 1 << Ticket.UNDERGROUND.ordinal(); // the tickets detectives can hand MrX
+	private static final int TICKETS = Ticket.values().length;
+	private static final int UNKNOWN = Integer.MAX_VALUE; // count of a ticket the board does not show
+
+	private final CompiledGraph graph;
+	private final Behaviour behaviour;
+	private final RandomGenerator random;
+	private final PossibleLocations possible;
+	private int[] nodes;                // particle -> node index
+	private int[] spare;                // resampling buffer
+	private final double[] weights;     // particle -> weight
+	private final double[] cumulative;  // particle -> sum of the weights up to and including it
+	private final double[] shares;      // node index -> share of the moves using the logged ticket
+	private final int[] seen;           // node index -> step its share was worked out in
+	private int step;
+	private int[] mrXTickets;           // ticket ordinal -> MrX's count at the last update, null before it
+	private int[][] detectiveTickets;   // piece index -> ticket ordinal -> the detective's count at the last update
+
+	/**
+	 * @param setup the game setup
+	 */
+	public LocationBelief(@Nonnull GameSetup setup) {
+		this(setup, DEFAULT_PARTICLES, Behaviour.UNIFORM, new SplittableRandom().nextLong());
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @param particles the number of particles
+	 * @param behaviour how much MrX favours each move
+	 * @param seed the seed of the random numbers particles move by
+	 * @throws IllegalArgumentException if particles is not positive
+	 */
+	public LocationBelief(@Nonnull GameSetup setup, int particles, @Nonnull Behaviour behaviour, long seed) {
+		if (particles <= 0) throw new IllegalArgumentException("Particles must be positive");
+		this.graph = setup.compiledGraph();
+		this.behaviour = behaviour;
+		this.random = new SplittableRandom(seed);
+		this.possible = PossibleLocations.of(setup);
+		this.nodes = new int[particles];
+		this.spare = new int[particles];
+		this.weights = new double[particles];
+		this.cumulative = new double[particles];
+		this.shares = new double[graph.nodeCount()];
+		this.seen = new int[graph.nodeCount()];
+		spread();
+		finish();
+	}
+
+	/**
+	 * @return the number of log entries pushed
+	 */
+	public int rounds() { return possible.rounds(); }
+
+	/**
+	 * @return the number of particles
+	 */
+	public int particles() { return nodes.length; }
+
+	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) { update(board); }
+
+	/**
+	 * Catches up with the board: pushes the entries of its travel log that were not pushed yet,
+	 * then drops the particles on nodes its detectives stand on.
+	 * <br>
+	 * MrX's ticket counts before the new entries are worked back from the counts the board shows
+	 * now: tickets logged since are added back and tickets detectives have handed MrX since are
+	 * taken off. A detective's ticket went to MrX after the entries if the detective has moved
+	 * this round, which only a game state from {@link MyGameStateFactory} or
+	 * {@link PackedGameStateFactory} shows. A count that cannot be worked out exactly, such as
+	 * on the first update or when updates skipped one of MrX's moves, is taken as possibly held.
+	 *
+	 * @param board the board of the game this belief follows
+	 * @throws IllegalArgumentException if the board's log is shorter than the rounds pushed
+	 */
+	public void update(@Nonnull Board board) {
+		ImmutableList<LogEntry> log = board.getMrXTravelLog();
+		if (log.size() < rounds())
+			throw new IllegalArgumentException("Log has " + log.size() + " entries, " + rounds() + " pushed");
+		int[] held = ticketsOf(board, Piece.MrX.MRX);
+		int[][] given = new int[ScotlandYard.ALL_PIECES.size()][];
+		for (Piece piece : board.getPlayers())
+			if (piece.isDetective()) given[ScotlandYard.ALL_PIECES.indexOf(piece)] = ticketsOf(board, piece);
+		if (log.size() > rounds()) {
+			List<LogEntry> entries = log.subList(rounds(), log.size());
+			int doubles = spent(mrXTickets, held, DOUBLE); // MrX is never handed a double ticket
+			boolean doubleMove = entries.size() == 2 && doubles == 1;
+			int[] counts = heldBefore(board, entries, held, given, entries.size() == 1 || doubleMove);
+			counts[DOUBLE] = doubles == UNKNOWN ? UNKNOWN : held[DOUBLE] + doubles;
+			for (LogEntry entry : entries) {
+				push(entry, counts);
+				take(counts, entry.ticket().ordinal());
+				if (doubleMove) take(counts, DOUBLE); // spent with the first entry
+				else if (doubles != 0) counts[DOUBLE] = UNKNOWN; // not known which entries were double moves
+				doubleMove = false;
+			}
+		}
+		mrXTickets = held;
+		detectiveTickets = given;
+		for (Piece piece : board.getPlayers())
+			if (piece.isDetective())
+				board.getDetectiveLocation((Detective) piece).ifPresent(this::drop);
+		finish();
+	}
+
+	// MrX's tickets before the first of the given entries but for double tickets, see update
+	private int[] heldBefore(Board board, List<LogEntry> entries, int[] held, int[][] given, boolean oneMove) {
+		int[] counts = held.clone();
+		for (LogEntry entry : entries) add(counts, entry.ticket().ordinal(), 1);
+		ImmutableSet<Piece> remaining = PackedPosition.remaining(board);
+		boolean moved = board instanceof PackedPosition.Source && !remaining.contains(Piece.MrX.MRX); // whether detectives not remaining moved this round
+		int unsure = 0; // tickets that may have been handed over between the entries or after them
+		for (Piece piece : board.getPlayers()) {
+			if (!piece.isDetective()) continue;
+			int index = ScotlandYard.ALL_PIECES.indexOf(piece);
+			int[] before = detectiveTickets == null ? null : detectiveTickets[index];
+			int handed = 0; // tickets of the detective's moves since the last update
+			int tickets = 0;
+			int last = -1;
+			for (int ticket = 0; ticket < TICKETS; ticket++) {
+				int count = spent(before, given[index], ticket);
+				if (count == 0) continue;
+				if (count == UNKNOWN) {
+					handed = UNKNOWN;
+					tickets = HANDED;
+					break;
+				}
+				handed += count;
+				tickets |= 1 << ticket;
+				last = ticket;
+			}
+			if (handed == 0) continue;
+			if (remaining.contains(piece) && oneMove) continue; // handed over before MrX moved
+			if (!remaining.contains(piece) && moved && handed == 1) add(counts, last, -1); // handed over after MrX moved
+			else unsure |= tickets;
+		}
+		for (int ticket = 0; ticket < TICKETS; ticket++)
+			if ((unsure & 1 << ticket) != 0 && counts[ticket] != 0) counts[ticket] = UNKNOWN;
+		return counts;
+	}
+
+	// the count of a ticket in one update less the count in a later one; UNKNOWN if either is
+	private static int spent(int[] before, int[] after, int ticket) {
+		if (before == null || after == null || before[ticket] == UNKNOWN || after[ticket] == UNKNOWN)
+			return UNKNOWN;
+		return before[ticket] - after[ticket];
+	}
+
+	private static void add(int[] counts, int ticket, int delta) {
+		if (counts[ticket] != UNKNOWN) counts[ticket] += delta;
+	}
+
+	private static void take(int[] counts, int ticket) { add(counts, ticket, -1); }
+
+	private static int[] ticketsOf(Board board, Piece piece) {
+		Optional<TicketBoard> held = board.getPlayerTickets(piece);
+		int[] counts = new int[TICKETS];
+		for (Ticket ticket : Ticket.values())
+			counts[ticket.ordinal()] = held.map(tickets -> tickets.getCount(ticket)).orElse(UNKNOWN);
+		return counts;
+	}
+
+	/**
+	 * Moves the particles on by the given log entry
+	 *
+	 * @param entry the log entry
+	 * @param tickets the tickets MrX held before the entry was logged
+	 */
+	public void push(@Nonnull LogEntry entry, @Nonnull TicketBoard tickets) {
+		int[] counts = new int[TICKETS];
+		for (Ticket ticket : Ticket.values()) counts[ticket.ordinal()] = tickets.getCount(ticket);
+		push(entry, counts);
+		finish();
+	}
+
+	/**
+	 * Drops the particles on the given node, for a node a detective stands on
+	 *
+	 * @param node the node
+	 */
+	public void exclude(int node) {
+		drop(node);
+		finish();
+	}
+
+	/**
+	 * @param node the node
+	 * @return the probability that MrX is on the node
+	 */
+	public double probability(int node) {
+		int index = graph.indexOf(node);
+		if (index < 0) return 0;
+		double weight = 0;
+		for (int i = 0; i < nodes.length; i++) if (nodes[i] == index) weight += weights[i];
+		return weight / cumulative[nodes.length - 1];
+	}
+
+	/**
+	 * @return the probability of every node MrX could be on, by node
+	 */
+	@Nonnull public ImmutableSortedMap<Integer, Double> distribution() {
+		double[] byNode = new double[graph.nodeCount()];
+		for (int i = 0; i < nodes.length; i++) byNode[nodes[i]] += weights[i];
+		ImmutableSortedMap.Builder<Integer, Double> distribution = ImmutableSortedMap.naturalOrder();
+		for (int index = 0; index < byNode.length; index++)
+			if (byNode[index] > 0) distribution.put(graph.nodeAt(index), byNode[index] / cumulative[nodes.length - 1]);
+		return distribution.build();
+	}
+
+	/**
+	 * @param random the random numbers to draw with, one per thread
+	 * @return a node MrX could be on, drawn by its probability
+	 */
+	public int sample(@Nonnull RandomGenerator random) {
+		double target = random.nextDouble() * cumulative[nodes.length - 1];
+		int i = Arrays.binarySearch(cumulative, target);
+		if (i < 0) i = -i - 1;
+		i = Math.min(i, nodes.length - 1);
+		while (weights[i] == 0 && i < nodes.length - 1) i++; // past dropped particles
+		return graph.nodeAt(nodes[i]);
+	}
+
+	private void push(LogEntry entry, int[] counts) {
+		possible.push(entry);
+		Optional<Integer> revealed = entry.location();
+		if (revealed.isPresent()) {
+			Arrays.fill(nodes, graph.indexOf(revealed.get()));
+			Arrays.fill(weights, 1);
+			return;
+		}
+		int ticket = entry.ticket().ordinal();
+		int held = counts[ticket];
+		counts[ticket] = Math.max(held, 1); // the log shows MrX had it
+		step++;
+		for (int i = 0; i < nodes.length; i++) {
+			if (weights[i] == 0) continue;
+			int index = nodes[i];
+			if (seen[index] != step) {
+				shares[index] = share(index, ticket, counts);
+				seen[index] = step;
+			}
+			weights[i] *= shares[index];
+			if (weights[i] > 0) nodes[i] = next(index, ticket);
+		}
+		counts[ticket] = held;
+	}
+
+	// the share of the moves from the node that use the ticket, by the behaviour's weights
+	private double share(int index, int ticket, int[] counts) {
+		int source = graph.nodeAt(index);
+		double total = 0;
+		double using = 0;
+		for (int e = graph.edgeStart(index); e < graph.edgeEnd(index); e++) {
+			int destination = graph.targetNode(e);
+			for (int mask = graph.tickets(e) | SECRET; mask != 0; mask &= mask - 1) {
+				int held = Integer.numberOfTrailingZeros(mask);
+				if (counts[held] == 0) continue;
+				double weight = behaviour.weight(source, CompiledGraph.ticket(held), destination);
+				total += weight;
+				if (held == ticket) using += weight;
+			}
+		}
+		return total == 0 ? 0 : using / total;
+	}
+
+	// a node index the ticket takes MrX to from the node, drawn by the behaviour's weights
+	private int next(int index, int ticket) {
+		int source = graph.nodeAt(index);
+		Ticket used = CompiledGraph.ticket(ticket);
+		int bit = 1 << ticket;
+		double total = 0;
+		for (int e = graph.edgeStart(index); e < graph.edgeEnd(index); e++)
+			if (((graph.tickets(e) | SECRET) & bit) != 0)
+				total += behaviour.weight(source, used, graph.targetNode(e));
+		double target = random.nextDouble() * total;
+		int last = index;
+		for (int e = graph.edgeStart(index); e < graph.edgeEnd(index); e++)
+			if (((graph.tickets(e) | SECRET) & bit) != 0) {
+				last = graph.target(e);
+				target -= behaviour.weight(source, used, graph.targetNode(e));
+				if (target < 0) break;
+			}
+		return last;
+	}
+
+	private void drop(int node) {
+		possible.exclude(node);
+		int index = graph.indexOf(node);
+		if (index < 0) return;
+		for (int i = 0; i < nodes.length; i++) if (nodes[i] == index) weights[i] = 0;
+	}
+
+	// puts the particles evenly on the nodes still possible, or on every node if none are
+	private void spread() {
+		int[] allowed = possible.toArray();
+		for (int i = 0; i < nodes.length; i++)
+			nodes[i] = allowed.length == 0 ? i % graph.nodeCount() : graph.indexOf(allowed[i % allowed.length]);
+		Arrays.fill(weights, 1);
+	}
+
+	// respreads an empty cloud, resamples a degenerate one and sums up the weights
+	private void finish() {
+		double total = 0;
+		double squares = 0;
+		for (double weight : weights) {
+			total += weight;
+			squares += weight * weight;
+		}
+		if (total == 0) spread();
+		else if (total * total < squares * nodes.length / 2) resample(total); // effective size below half
+		double sum = 0;
+		for (int i = 0; i < nodes.length; i++) cumulative[i] = sum += weights[i];
+	}
+
+	// systematic resampling: one draw, then particles at even steps along the weights
+	private void resample(double total) {
+		double stride = total / nodes.length;
+		double target = random.nextDouble() * stride;
+		double sum = weights[0];
+		int from = 0;
+		for (int i = 0; i < nodes.length; i++, target += stride) {
+			while (sum < target && from < nodes.length - 1) sum += weights[++from];
+			spare[i] = nodes[from];
+		}
+		int[] swap = nodes;
+		nodes = spare;
+		spare = swap;
+		Arrays.fill(weights, 1);
+	}
+}
@@ -24,7 +24,8 @@ public class ModelFactories {
 					>
 			> factories() {
 		return ImmutableList.of(
-				new SimpleImmutableEntry<>(MyGameStateFactory::new, MyModelFactory::new));
+				new SimpleImmutableEntry<>(MyGameStateFactory::new, MyModelFactory::new),
+				new SimpleImmutableEntry<>(PackedGameStateFactory::new, MyModelFactory::new));
 	}
 
 
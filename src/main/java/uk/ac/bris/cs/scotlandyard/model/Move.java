@@ -106,7 +106,9 @@ public interface Move extends Serializable {
 			return source == that.source && destination == that.destination &&
 					piece == that.piece && ticket == that.ticket;
 		}
-		@Override public int hashCode() { return Objects.hash(piece, ticket, destination); }
+		@Override public int hashCode() { // same as Objects.hash(piece, ticket, destination) without the varargs array
+			return ((31 + piece.hashCode()) * 31 + ticket.hashCode()) * 31 + destination;
+		}
 		@Override public String toString() {
 			return ticket.name() + "(" + piece + "@" + source + ", " + destination + ")";
 		}
@@ -159,7 +161,12 @@ public interface Move extends Serializable {
 					ticket2 == that.ticket2 && destination2 == that.destination2;
 		}
 		@Override public int hashCode() {
-			return Objects.hash(piece, ticket1, destination1, ticket2, destination2);
+			// same as Objects.hash(piece, ticket1, destination1, ticket2, destination2) without the varargs array
+			int hash = 31 + piece.hashCode();
+			hash = 31 * hash + ticket1.hashCode();
+			hash = 31 * hash + destination1;
+			hash = 31 * hash + ticket2.hashCode();
+			return 31 * hash + destination2;
 		}
 		@Override public String toString() {
 			return "x2(" + piece + "@" + source + ", " + ticket1 + ", " + destination1 + ", " + ticket2 + ", " + destination2 + ")";
@@ -0,0 +1,226 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * The available moves of a board grouped by where they go, see {@link #of(Board)}.
+ * <br>
+ * Single moves are grouped by piece and destination, each group holding the tickets that can take
+ * the piece there. Double moves are grouped by the node after the first leg and the destination,
+ * each group holding the ticket pairs that can be used. Tickets are bitmasks of
+ * {@link Ticket#ordinal()}s and ticket pairs are bitmasks of {@link #pair(int, int)}s. Groups are
+ * in ascending order of piece and then nodes.
+ * <br>
+ * The groups are collected through {@link Board.GameState#generateMoves(MoveSink)}, so no
+ * {@link Move} is made for a game state.
+ */
+public final class MoveGroups {
+
+	private static final int TICKETS = Ticket.values().length;
+	private static final long NODE_MASK = 0xFFFFFFFFL;
+
+	private final int[] sources;       // piece index -> location the piece moves from, -1 if it has no move
+	private final long[] singleKeys;   // group -> piece << 32 | destination
+	private final int[] singleTickets; // group -> ticket mask
+	private final long[] doubleKeys;   // group -> destination1 << 32 | destination2
+	private final int[] doubleTickets; // group -> ticket pair mask
+	private final int size;
+
+	private MoveGroups(int[] sources, long[] singleKeys, int[] singleTickets,
+	                   long[] doubleKeys, int[] doubleTickets, int size) {
+		this.sources = sources;
+		this.singleKeys = singleKeys;
+		this.singleTickets = singleTickets;
+		this.doubleKeys = doubleKeys;
+		this.doubleTickets = doubleTickets;
+		this.size = size;
+	}
+
+	/**
+	 * @param ticket1 the ordinal of the ticket used for the first leg
+	 * @param ticket2 the ordinal of the ticket used for the second leg
+	 * @return the bit of the ticket pair in {@link #doubleTickets(int)}
+	 */
+	public static int pair(int ticket1, int ticket2) { return ticket1 * TICKETS + ticket2; }
+
+	/**
+	 * @param pair a ticket pair from {@link #pair(int, int)}
+	 * @return the ordinal of the ticket used for the first leg
+	 */
+	public static int pairTicket1(int pair) { return pair / TICKETS; }
+
+	/**
+	 * @param pair a ticket pair from {@link #pair(int, int)}
+	 * @return the ordinal of the ticket used for the second leg
+	 */
+	public static int pairTicket2(int pair) { return pair % TICKETS; }
+
+	/**
+	 * Groups the available moves of the given board, generating them directly if the board is a
+	 * {@link Board.GameState}
+	 *
+	 * @param board the board
+	 * @return the grouped moves
+	 */
+	@Nonnull public static MoveGroups of(@Nonnull Board board) {
+		Collector collector = new Collector();
+		if (board instanceof Board.GameState) ((Board.GameState) board).generateMoves(collector);
+		else for (Move move : board.getAvailableMoves()) collector.accept(move);
+		return collector.groups();
+	}
+
+	/**
+	 * @return the number of moves in all groups
+	 */
+	public int size() { return size; }
+
+	/**
+	 * @param piece the piece
+	 * @return where the piece moves from; -1 if it has no moves
+	 */
+	public int source(@Nonnull Piece piece) { return sources[ScotlandYard.ALL_PIECES.indexOf(piece)]; }
+
+	/**
+	 * @return the number of single move groups
+	 */
+	public int singleGroups() { return singleKeys.length; }
+
+	/**
+	 * @param group the single move group
+	 * @return the piece making the moves
+	 */
+	@Nonnull public Piece singlePiece(int group) {
+		return ScotlandYard.ALL_PIECES.get((int) (singleKeys[group] >>> 32));
+	}
+
+	/**
+	 * @param group the single move group
+	 * @return the destination of the moves
+	 */
+	public int singleDestination(int group) { return (int) singleKeys[group]; }
+
+	/**
+	 * @param group the single move group
+	 * @return the tickets that take the piece to the destination
+	 */
+	public int singleTickets(int group) { return singleTickets[group]; }
+
+	/**
+	 * @param piece the piece
+	 * @param destination the destination
+	 * @return the tickets that take the piece to the destination in one move; 0 if there are none
+	 */
+	public int singleTickets(@Nonnull Piece piece, int destination) {
+		long key = (long) ScotlandYard.ALL_PIECES.indexOf(piece) << 32 | (destination & NODE_MASK);
+		int group = Arrays.binarySearch(singleKeys, key);
+		return group < 0 ? 0 : singleTickets[group];
+	}
+
+	/**
+	 * @return the number of double move groups, all of them MrX's
+	 */
+	public int doubleGroups() { return doubleKeys.length; }
+
+	/**
+	 * @param group the double move group
+	 * @return the node after the first leg
+	 */
+	public int doubleMiddle(int group) { return (int) (doubleKeys[group] >>> 32); }
+
+	/**
+	 * @param group the double move group
+	 * @return the destination after both legs
+	 */
+	public int doubleDestination(int group) { return (int) doubleKeys[group]; }
+
+	/**
+	 * @param group the double move group
+	 * @return the ticket pairs that take MrX to the destination through the middle node
+	 */
+	public int doubleTickets(int group) { return doubleTickets[group]; }
+
+	/**
+	 * @param piece the piece
+	 * @return every node the piece can end a move on, in ascending order
+	 */
+	@Nonnull public ImmutableSet<Integer> destinations(@Nonnull Piece piece) {
+		int index = ScotlandYard.ALL_PIECES.indexOf(piece);
+		int[] nodes = new int[singleKeys.length + (piece.isMrX() ? doubleKeys.length : 0)];
+		int count = 0;
+		for (int group = 0; group < singleKeys.length; group++)
+			if (singleKeys[group] >>> 32 == index) nodes[count++] = singleDestination(group);
+		if (piece.isMrX())
+			for (int group = 0; group < doubleKeys.length; group++) nodes[count++] = doubleDestination(group);
+		Arrays.sort(nodes, 0, count);
+		ImmutableSet.Builder<Integer> builder = ImmutableSet.builder();
+		for (int i = 0; i < count; i++) builder.add(nodes[i]);
+		return builder.build();
+	}
+
+	@Override public String toString() {
+		return "MoveGroups{" + singleKeys.length + " single, " + doubleKeys.length + " double, "
+				+ size + " moves}";
+	}
+
+	// collects one code per move and groups them once all moves are in
+	private static final class Collector implements MoveSink {
+		private final int[] sources = new int[ScotlandYard.ALL_PIECES.size()];
+		private long[] singles = new long[16];  // piece << 40 | destination << 8 | ticket
+		private long[] doubles = new long[16];  // destination1 << 40 | destination2 << 8 | pair
+		private int singleCount;
+		private int doubleCount;
+
+		Collector() { Arrays.fill(sources, -1); }
+
+		@Override public void single(int piece, int source, int ticket, int destination) {
+			sources[piece] = source;
+			if (singleCount == singles.length) singles = Arrays.copyOf(singles, singleCount * 2);
+			singles[singleCount++] = (long) piece << 40 | (destination & NODE_MASK) << 8 | ticket;
+		}
+
+		@Override public void doubleMove(int piece, int source, int ticket1, int destination1,
+		                                 int ticket2, int destination2) {
+			sources[piece] = source;
+			if (doubleCount == doubles.length) doubles = Arrays.copyOf(doubles, doubleCount * 2);
+			doubles[doubleCount++] = (long) destination1 << 40 | (destination2 & NODE_MASK) << 8
+					| pair(ticket1, ticket2);
+		}
+
+		private static int groupCount(long[] codes, int count) {
+			int groups = 0;
+			for (int i = 0; i < count; i++)
+				if (i == 0 || codes[i] >>> 8 != codes[i - 1] >>> 8) groups++;
+			return groups;
+		}
+
+		// folds sorted codes with the same key into one group, the low byte of a code is its bit in the mask
+		private static void group(long[] codes, int count, long[] keys, int[] masks) {
+			int group = -1;
+			for (int i = 0; i < count; i++) {
+				if (i == 0 || codes[i] >>> 8 != codes[i - 1] >>> 8) keys[++group] = codes[i] >>> 8;
+				masks[group] |= 1 << (int) (codes[i] & 0xFF);
+			}
+		}
+
+		MoveGroups groups() {
+			Arrays.sort(singles, 0, singleCount);
+			Arrays.sort(doubles, 0, doubleCount);
+			int singleGroups = groupCount(singles, singleCount);
+			int doubleGroups = groupCount(doubles, doubleCount);
+			long[] singleKeys = new long[singleGroups];
+			int[] singleTickets = new int[singleGroups];
+			long[] doubleKeys = new long[doubleGroups];
+			int[] doubleTickets = new int[doubleGroups];
+			group(singles, singleCount, singleKeys, singleTickets);
+			group(doubles, doubleCount, doubleKeys, doubleTickets);
+			return new MoveGroups(sources, singleKeys, singleTickets, doubleKeys, doubleTickets,
+					singleCount + doubleCount);
+		}
+	}
+}
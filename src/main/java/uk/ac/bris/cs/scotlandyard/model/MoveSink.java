@@ -0,0 +1,76 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Receives generated moves as primitives, so that move generation does not have to allocate a
+ * {@link Move} per move, see {@link Board.GameState#generateMoves(MoveSink)}.
+ * <br>
+ * Pieces are given as their index in {@link ScotlandYard#ALL_PIECES} and tickets as their
+ * {@link Ticket#ordinal()}. Every move is pushed exactly once.
+ */
+public interface MoveSink {
+
+	/**
+	 * Receives a {@link Move.SingleMove}
+	 *
+	 * @param piece the index of the piece in {@link ScotlandYard#ALL_PIECES}
+	 * @param source the location before the move
+	 * @param ticket the ordinal of the ticket used
+	 * @param destination the location after the move
+	 */
+	void single(int piece, int source, int ticket, int destination);
+
+	/**
+	 * Receives a {@link Move.DoubleMove}
+	 *
+	 * @param piece the index of the piece in {@link ScotlandYard#ALL_PIECES}
+	 * @param source the location before the move
+	 * @param ticket1 the ordinal of the ticket used for the first leg
+	 * @param destination1 the location after the first leg
+	 * @param ticket2 the ordinal of the ticket used for the second leg
+	 * @param destination2 the location after the second leg
+	 */
+	void doubleMove(int piece, int source, int ticket1, int destination1,
+	                int ticket2, int destination2);
+
+	/**
+	 * Pushes an existing move into this sink
+	 *
+	 * @param move the move
+	 */
+	default void accept(@Nonnull Move move) {
+		int piece = ScotlandYard.ALL_PIECES.indexOf(move.commencedBy());
+		if (move instanceof Move.SingleMove) {
+			Move.SingleMove m = (Move.SingleMove) move;
+			single(piece, m.source(), m.ticket.ordinal(), m.destination);
+		} else {
+			Move.DoubleMove m = (Move.DoubleMove) move;
+			doubleMove(piece, m.source(), m.ticket1.ordinal(), m.destination1,
+					m.ticket2.ordinal(), m.destination2);
+		}
+	}
+
+	/**
+	 * @param consumer the consumer
+	 * @return a sink that turns every move back into a {@link Move} for the given consumer
+	 */
+	@Nonnull static MoveSink of(@Nonnull Consumer<? super Move> consumer) {
+		return new MoveSink() {
+			@Override public void single(int piece, int source, int ticket, int destination) {
+				consumer.accept(new Move.SingleMove(ScotlandYard.ALL_PIECES.get(piece), source,
+						CompiledGraph.ticket(ticket), destination));
+			}
+			@Override public void doubleMove(int piece, int source, int ticket1, int destination1,
+			                                 int ticket2, int destination2) {
+				consumer.accept(new Move.DoubleMove(ScotlandYard.ALL_PIECES.get(piece), source,
+						CompiledGraph.ticket(ticket1), destination1,
+						CompiledGraph.ticket(ticket2), destination2));
+			}
+		};
+	}
+}
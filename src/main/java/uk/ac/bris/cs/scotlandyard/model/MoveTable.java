@@ -0,0 +1,289 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Every move that can be made on a {@link CompiledGraph}, each as one canonical {@link Move} with a
+ * dense id in {@code 0..size()-1}.
+ * <br>
+ * The table holds a single move for every piece, edge and ticket the edge accepts (MrX may also
+ * use {@link Ticket#SECRET} on any edge), and a double move for MrX along every pair of edges.
+ * Whether a move is legal in a given position is up to the game; the table only knows the graph.
+ * Single moves take the lowest ids. Double moves follow, grouped by source node, and are also laid
+ * out as flat two-hop entries so MrX's double moves can be generated with one linear scan.
+ * Moves handed out by the table can be compared by identity and ids can index plain arrays, for
+ * example for per-move search statistics.
+ * <br>
+ * Use {@link CompiledGraph#moveTable()} to get the instance cached on a graph.
+ */
+public final class MoveTable {
+
+	private static final int TICKETS = Ticket.values().length;
+	private static final int PIECES = ScotlandYard.ALL_PIECES.size();
+	private static final int MRX = ScotlandYard.ALL_PIECES.indexOf(Piece.MrX.MRX);
+	private static final int SECRET = 1 << Ticket.SECRET.ordinal();
+
+	private final CompiledGraph graph;
+	private final Move[] moves;        // id -> move
+	private final int[] singleIds;     // (piece * edgeCount + edge) * TICKETS + ticket -> id, -1 if none
+	private final int[] doubleOffsets; // first edge -> first slot of its second edges in doubleIds
+	private final int[] doubleIds;     // slot of the second edge * TICKETS^2 + ticket1 * TICKETS + ticket2 -> id
+	private final int doubleBase;      // id of the first double move, the two-hop entry k is id doubleBase + k
+	private final int[] twoHopOffsets; // source index -> first two-hop entry, length nodeCount + 1
+	private final int[] twoHopMiddle;  // entry -> index of the node between the two legs
+	private final int[] twoHopTarget;  // entry -> index of the node after both legs
+	private final byte[] twoHopTickets;// entry -> ticket1 | ticket2 << 3
+
+	private MoveTable(CompiledGraph graph, Move[] moves, int[] singleIds,
+	                  int[] doubleOffsets, int[] doubleIds, int doubleBase, int[] twoHopOffsets,
+	                  int[] twoHopMiddle, int[] twoHopTarget, byte[] twoHopTickets) {
+		this.graph = graph;
+		this.moves = moves;
+		this.singleIds = singleIds;
+		this.doubleOffsets = doubleOffsets;
+		this.doubleIds = doubleIds;
+		this.doubleBase = doubleBase;
+		this.twoHopOffsets = twoHopOffsets;
+		this.twoHopMiddle = twoHopMiddle;
+		this.twoHopTarget = twoHopTarget;
+		this.twoHopTickets = twoHopTickets;
+	}
+
+	// tickets the piece could use along the edge if it held them; detectives never hold SECRET
+	private static int usableTickets(CompiledGraph graph, int piece, int edge) {
+		return piece == MRX ? graph.tickets(edge) | SECRET : graph.tickets(edge) & ~SECRET;
+	}
+
+	static MoveTable build(CompiledGraph graph) {
+		int edges = graph.edgeCount();
+		int[] singleIds = new int[PIECES * edges * TICKETS];
+		Arrays.fill(singleIds, -1);
+		int[] doubleOffsets = new int[edges + 1];
+		for (int e = 0; e < edges; e++) {
+			int middle = graph.target(e);
+			doubleOffsets[e + 1] = doubleOffsets[e]
+					+ (graph.edgeEnd(middle) - graph.edgeStart(middle)) * TICKETS * TICKETS;
+		}
+		int[] doubleIds = new int[doubleOffsets[edges]];
+		Arrays.fill(doubleIds, -1);
+
+		int singles = 0;
+		for (int piece = 0; piece < PIECES; piece++)
+			for (int e = 0; e < edges; e++)
+				singles += Integer.bitCount(usableTickets(graph, piece, e));
+		int doubles = 0;
+		for (int e1 = 0; e1 < edges; e1++) {
+			int middle = graph.target(e1);
+			int first = Integer.bitCount(usableTickets(graph, MRX, e1));
+			for (int e2 = graph.edgeStart(middle); e2 < graph.edgeEnd(middle); e2++)
+				doubles += first * Integer.bitCount(usableTickets(graph, MRX, e2));
+		}
+
+		Move[] moves = new Move[singles + doubles];
+		int id = 0;
+		for (int index = 0; index < graph.nodeCount(); index++) {
+			for (int e = graph.edgeStart(index); e < graph.edgeEnd(index); e++) {
+				for (int piece = 0; piece < PIECES; piece++) {
+					for (int m = usableTickets(graph, piece, e); m != 0; m &= m - 1) {
+						int ticket = Integer.numberOfTrailingZeros(m);
+						moves[id] = new Move.SingleMove(ScotlandYard.ALL_PIECES.get(piece),
+								graph.nodeAt(index), CompiledGraph.ticket(ticket), graph.targetNode(e));
+						singleIds[(piece * edges + e) * TICKETS + ticket] = id++;
+					}
+				}
+			}
+		}
+
+		// double moves come after every single move, grouped by source so that each source's
+		// two-hop entries are one contiguous range
+		int[] twoHopOffsets = new int[graph.nodeCount() + 1];
+		int[] twoHopMiddle = new int[doubles];
+		int[] twoHopTarget = new int[doubles];
+		byte[] twoHopTickets = new byte[doubles];
+		int k = 0;
+		for (int index = 0; index < graph.nodeCount(); index++) {
+			twoHopOffsets[index] = k;
+			for (int e = graph.edgeStart(index); e < graph.edgeEnd(index); e++) {
+				int middle = graph.target(e);
+				for (int e2 = graph.edgeStart(middle); e2 < graph.edgeEnd(middle); e2++) {
+					int slot = doubleOffsets[e] + (e2 - graph.edgeStart(middle)) * TICKETS * TICKETS;
+					for (int m1 = usableTickets(graph, MRX, e); m1 != 0; m1 &= m1 - 1) {
+						int ticket1 = Integer.numberOfTrailingZeros(m1);
+						for (int m2 = usableTickets(graph, MRX, e2); m2 != 0; m2 &= m2 - 1) {
+							int ticket2 = Integer.numberOfTrailingZeros(m2);
+							moves[singles + k] = new Move.DoubleMove(Piece.MrX.MRX, graph.nodeAt(index),
+									CompiledGraph.ticket(ticket1), graph.targetNode(e),
+									CompiledGraph.ticket(ticket2), graph.targetNode(e2));
+							doubleIds[slot + ticket1 * TICKETS + ticket2] = singles + k;
+							twoHopMiddle[k] = middle;
+							twoHopTarget[k] = graph.target(e2);
+							twoHopTickets[k] = (byte) (ticket1 | ticket2 << 3);
+							k++;
+						}
+					}
+				}
+			}
+		}
+		twoHopOffsets[graph.nodeCount()] = k;
+		return new MoveTable(graph, moves, singleIds, doubleOffsets, doubleIds, singles,
+				twoHopOffsets, twoHopMiddle, twoHopTarget, twoHopTickets);
+	}
+
+	/**
+	 * @return the number of moves, one more than the largest id
+	 */
+	public int size() { return moves.length; }
+
+	/**
+	 * @param id the id
+	 * @return the canonical move with the given id
+	 * @throws ArrayIndexOutOfBoundsException if the id is out of range
+	 */
+	@Nonnull public Move get(int id) { return moves[id]; }
+
+	/**
+	 * @param index the dense index of MrX's node
+	 * @return the first two-hop entry from the given node; entries list every double move from the
+	 * node with both legs and tickets, for generation to filter by held tickets and occupancy
+	 */
+	public int twoHopStart(int index) { return twoHopOffsets[index]; }
+	/**
+	 * @param index the dense index of MrX's node
+	 * @return one past the last two-hop entry from the given node
+	 */
+	public int twoHopEnd(int index) { return twoHopOffsets[index + 1]; }
+	/**
+	 * @param entry the two-hop entry
+	 * @return the dense index of the node reached by the first leg
+	 */
+	public int twoHopMiddle(int entry) { return twoHopMiddle[entry]; }
+	/**
+	 * @param entry the two-hop entry
+	 * @return the dense index of the node reached by the second leg
+	 */
+	public int twoHopTarget(int entry) { return twoHopTarget[entry]; }
+	/**
+	 * @param entry the two-hop entry
+	 * @return the ordinal of the ticket for the first leg
+	 */
+	public int twoHopTicket1(int entry) { return twoHopTickets[entry] & 0x7; }
+	/**
+	 * @param entry the two-hop entry
+	 * @return the ordinal of the ticket for the second leg
+	 */
+	public int twoHopTicket2(int entry) { return twoHopTickets[entry] >>> 3; }
+	/**
+	 * @param entry the two-hop entry
+	 * @return the id of the entry's double move
+	 */
+	public int twoHopId(int entry) { return doubleBase + entry; }
+
+	private int edge(int source, int destination) {
+		int index = graph.indexOf(source);
+		return index < 0 ? -1 : graph.edgeTo(index, destination);
+	}
+
+	/**
+	 * @param piece the index of the piece in {@link ScotlandYard#ALL_PIECES}
+	 * @param source the location before the move
+	 * @param ticket the ordinal of the ticket used
+	 * @param destination the location after the move
+	 * @return the id of the single move; -1 if there is no such move on the graph
+	 */
+	public int singleId(int piece, int source, int ticket, int destination) {
+		if (piece < 0 || piece >= PIECES || ticket < 0 || ticket >= TICKETS) return -1;
+		int edge = edge(source, destination);
+		return edge < 0 ? -1 : singleIds[(piece * graph.edgeCount() + edge) * TICKETS + ticket];
+	}
+
+	/**
+	 * @param source the location before the move
+	 * @param ticket1 the ordinal of the ticket used for the first leg
+	 * @param destination1 the location after the first leg
+	 * @param ticket2 the ordinal of the ticket used for the second leg
+	 * @param destination2 the location after the second leg
+	 * @return the id of MrX's double move; -1 if there is no such move on the graph
+	 */
+	public int doubleId(int source, int ticket1, int destination1, int ticket2, int destination2) {
+		if (ticket1 < 0 || ticket1 >= TICKETS || ticket2 < 0 || ticket2 >= TICKETS) return -1;
+		int first = edge(source, destination1);
+		if (first < 0) return -1;
+		int middle = graph.target(first);
+		int second = graph.edgeTo(middle, destination2);
+		if (second < 0) return -1;
+		int slot = doubleOffsets[first] + (second - graph.edgeStart(middle)) * TICKETS * TICKETS;
+		return doubleIds[slot + ticket1 * TICKETS + ticket2];
+	}
+
+	/**
+	 * @param move the move
+	 * @return the id of an equal move; -1 if there is no such move on the graph
+	 */
+	public int idOf(@Nonnull Move move) {
+		int piece = ScotlandYard.ALL_PIECES.indexOf(move.commencedBy());
+		if (move instanceof Move.SingleMove) {
+			Move.SingleMove m = (Move.SingleMove) move;
+			return singleId(piece, m.source(), m.ticket.ordinal(), m.destination);
+		}
+		Move.DoubleMove m = (Move.DoubleMove) move;
+		if (piece != MRX) return -1;
+		return doubleId(m.source(), m.ticket1.ordinal(), m.destination1,
+				m.ticket2.ordinal(), m.destination2);
+	}
+
+	/**
+	 * @param move the move
+	 * @return the canonical move equal to the given move; the move itself if it is not on the graph
+	 */
+	@Nonnull public Move intern(@Nonnull Move move) {
+		int id = idOf(move);
+		return id < 0 ? move : moves[id];
+	}
+
+	/**
+	 * @param consumer the consumer
+	 * @return a sink that hands the canonical {@link Move} of every move to the given consumer,
+	 * allocating only for moves that are not on the graph
+	 */
+	@Nonnull public MoveSink sink(@Nonnull Consumer<? super Move> consumer) {
+		MoveSink fallback = MoveSink.of(consumer);
+		return new MoveSink() {
+			@Override public void single(int piece, int source, int ticket, int destination) {
+				int id = singleId(piece, source, ticket, destination);
+				if (id < 0) fallback.single(piece, source, ticket, destination);
+				else consumer.accept(moves[id]);
+			}
+			@Override public void doubleMove(int piece, int source, int ticket1, int destination1,
+			                                 int ticket2, int destination2) {
+				int id = piece == MRX ? doubleId(source, ticket1, destination1, ticket2, destination2) : -1;
+				if (id < 0) fallback.doubleMove(piece, source, ticket1, destination1, ticket2, destination2);
+				else consumer.accept(moves[id]);
+			}
+		};
+	}
+
+	/**
+	 * @param consumer the consumer
+	 * @return a sink that hands the id of every move to the given consumer; moves that are not on
+	 * the graph are passed as -1
+	 */
+	@Nonnull public MoveSink idSink(@Nonnull IntConsumer consumer) {
+		return new MoveSink() {
+			@Override public void single(int piece, int source, int ticket, int destination) {
+				consumer.accept(singleId(piece, source, ticket, destination));
+			}
+			@Override public void doubleMove(int piece, int source, int ticket1, int destination1,
+			                                 int ticket2, int destination2) {
+				consumer.accept(piece == MRX
+						? doubleId(source, ticket1, destination1, ticket2, destination2)
+						: -1);
+			}
+		};
+	}
+}
@@ -4,20 +4,51 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import javax.annotation.Nonnull;
 import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
 import uk.ac.bris.cs.scotlandyard.model.Piece.*;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.*;
 
 public final class MyGameStateFactory implements Factory<GameState> {
-	private final class MyGameState implements GameState, Board.TicketBoard {
+
+	/**
+	 * System property that, when set to {@code true}, makes factories created with
+	 * {@link #MyGameStateFactory()} validate every state rather than only the one from
+	 * {@link #build(GameSetup, Player, ImmutableList)}
+	 */
+	public static final String VALIDATE_STATES_PROPERTY = "scotlandyard.validateStates";
+
+	private final boolean validateStates; // re-run the build() checks on every state made by advance, for debugging
+
+	/**
+	 * Creates a factory that only validates the players it is given in
+	 * {@link #build(GameSetup, Player, ImmutableList)}, unless {@link #VALIDATE_STATES_PROPERTY}
+	 * is set
+	 */
+	public MyGameStateFactory() { this(Boolean.getBoolean(VALIDATE_STATES_PROPERTY)); }
+
+	/**
+	 * @param validateStates whether every state made by {@link GameState#advance(Move)} should be
+	 * validated like the first one, which is only worth it when debugging the transitions
+	 */
+	public MyGameStateFactory(boolean validateStates) { this.validateStates = validateStates; }
+
+	private final class MyGameState implements GameState, Board.TicketBoard, PackedPosition.Source {
 
 		final private GameSetup setup;
+		final private CompiledGraph graph; // int-indexed copy of setup.graph used for move generation
 		final private ImmutableSet<Piece> remaining; //pieces that still need to move
 		final private ImmutableList<LogEntry> log; //MRX move log
-		private Player mrX; // cannot be final as later on we need to assign him detectives' used tickets and you cant assign a value to final variable
+		final private Player mrX;
 		final private List<Player> detectives;
-		private ImmutableSet<Piece> winner; // cannot be final as values need to be assigned when game has a winner
+		final private long[] occupied; // one bit per graph index, set where a detective stands; shared between states so never written after construction
+		final private int movable; // bit i is set if detectives.get(i) has at least one single move, carried over from the previous state where possible
+		final private ImmutableSet<Piece> detectivePieces; // pieces of all detectives, shared between states
+		final private ImmutableSet<Piece> winner; // worked out once when the state is made
+		final private long zobrist; // Zobrist key of this position, updated from the previous state's key rather than recomputed
+		private volatile ImmutableSet<Move> moves; // computed on first use, states never change so it is safe to share
 
 
 		private MyGameState(
@@ -25,28 +56,27 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				final ImmutableSet<Piece> remaining,
 				final ImmutableList<LogEntry> log,
 				final Player mrX,
-				final List<Player> detectives) {
+				final List<Player> detectives,
+				final long[] occupied,
+				final int movable, // negative if not known yet
+				final ImmutableSet<Piece> detectivePieces,
+				final long zobrist) {
 
 
 			this.setup = setup;
+			this.graph = setup.compiledGraph();
 			this.log = log;
 			this.mrX = mrX;
 			this.detectives = detectives;
-			this.winner = ImmutableSet.of();
+			this.occupied = occupied;
+			this.detectivePieces = detectivePieces;
+			this.zobrist = zobrist;
 			this.remaining = remaining;
 
-			if (setup.moves.isEmpty()) throw new IllegalArgumentException("No available moves!");
-			if (this.detectives.isEmpty()) throw new IllegalArgumentException("No detectives found!");
-			if (!this.mrX.isMrX()) throw new IllegalArgumentException("MrX is null!");
-			if (setup.graph.nodes().isEmpty()) throw new IllegalArgumentException("Graph is empty!");
+			if (validateStates) validate(setup, mrX, detectives); // build() has already checked the first state, and advance keeps what it checks
 
-			Set<Integer> locations = new HashSet<>();
-			for (Player detective : detectives) {
-				if (detective.isMrX()) throw new IllegalArgumentException("Detective cannot be MrX!");
-				if (detective.has(Ticket.SECRET)) throw new IllegalArgumentException("Detective cannot have secret tickets!");
-				if (detective.has(Ticket.DOUBLE)) throw new IllegalArgumentException("Detective cannot have double tickets!");
-				if (!locations.add(detective.location())) throw new IllegalArgumentException("Duplicate detective location found!");
-			}
+			this.movable = movable >= 0 ? movable : findMovableDetectives(occupied);
+			this.winner = findWinner();
 		}
 
 
@@ -63,10 +93,15 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		}
 
 		private Player getDetective(Piece p) { // returns the detective that is its turn
-			for (Player detective : detectives) {
-				if (detective.piece().equals(p)) return detective;
+			int index = indexOfDetective(p);
+			return index < 0 ? null : detectives.get(index);
+		}
+
+		private int indexOfDetective(Piece p) { // returns where the detective is in the list, -1 if not in the game
+			for (int i = 0; i < detectives.size(); i++) {
+				if (detectives.get(i).piece().equals(p)) return i;
 			}
-			return null;
+			return -1;
 		}
 
 		@Nonnull @Override public Optional<Integer> getDetectiveLocation(Detective detective) { //returns detective location, empty if detective is not part of the game
@@ -78,9 +113,9 @@ public final class MyGameStateFactory implements Factory<GameState> {
 
 		@Nonnull @Override public Optional<Board.TicketBoard> getPlayerTickets(Piece piece) { //gets the ticket of the current player
 			for (Player detective: detectives) {
-				if (detective.piece().equals(piece)) return Optional.of(ticket -> detective.tickets().getOrDefault(ticket, 0));
-			} //get or default used in order to return 0 instead of null if no tickets are left
-			if (mrX.piece().equals(piece)) return Optional.of(ticket -> mrX.tickets().getOrDefault(ticket, 0));
+				if (detective.piece().equals(piece)) return Optional.of(detective::count);
+			} //count is 0 rather than missing if no tickets are left
+			if (mrX.piece().equals(piece)) return Optional.of(mrX::count);
 			return Optional.empty();
 		}
 
@@ -93,27 +128,52 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			return ImmutableSet.copyOf(allPlayers);
 		}
 
-		private boolean isNodeOccupiedByDetective(int nodeLocation) { //checks if a node is occupied by a detective
-			for (Player detective : detectives)
-				if (detective.location() == nodeLocation) return true;
+		private boolean isOccupiedByDetective(int index) { //checks if the node at a graph index is occupied by a detective
+			return isOccupied(occupied, index);
+		}
+
+		private int usableTickets(int edge, int held) { // tickets from held that can be used along an edge, secret works on any edge
+			return (graph.tickets(edge) & held) | (held & (1 << Ticket.SECRET.ordinal()));
+		}
+
+		private boolean hasSingleMove(Player player, long[] occupied) { // true if the player has at least one single move with detectives where the given bitset says, stops at the first one found
+			int source = graph.indexOf(player.location());
+			if (source < 0) return false; // player is not on the graph so there is nowhere to go
+			int held = player.heldMask();
+
+			for (int edge = graph.edgeStart(source); edge < graph.edgeEnd(source); edge++) {
+				if (usableTickets(edge, held) != 0 && !isOccupied(occupied, graph.target(edge))) return true;
+			}
 			return false;
 		}
 
-		private Set<Move.SingleMove> generateSingleMoves(Player player) { //generates all available single moves for a player from their current position
+		private int findMovableDetectives(long[] occupied) { // checks every detective from scratch, only needed for a new game
+			int movable = 0;
+			for (int i = 0; i < detectives.size(); i++) {
+				if (hasSingleMove(detectives.get(i), occupied)) movable |= 1 << i;
+			}
+			return movable;
+		}
+
+		private boolean isNextTo(Player player, int location) { // true if there is an edge between the player and the location
+			int source = graph.indexOf(player.location());
+			return source >= 0 && graph.edgeTo(source, location) >= 0;
+		}
 
-			Set<Move.SingleMove> moves = new HashSet<>();
+		private void generateSingleMoves(Player player, MoveSink sink) { //pushes all available single moves for a player from their current position into the sink
+			int source = graph.indexOf(player.location());
+			if (source < 0) return; // player is not on the graph so there is nowhere to go
+			int piece = ScotlandYard.ALL_PIECES.indexOf(player.piece());
+			int held = player.heldMask();
 
-			for (int destination : setup.graph.adjacentNodes(player.location())) {
-				if (isNodeOccupiedByDetective(destination)) continue; // exits this iteration of loop if destination node is occupied by detective
+			for (int edge = graph.edgeStart(source); edge < graph.edgeEnd(source); edge++) {
+				int destination = graph.targetNode(edge);
+				if (isOccupiedByDetective(graph.target(edge))) continue; // exits this iteration of loop if destination node is occupied by detective
 
-				for (Transport t : setup.graph.edgeValueOrDefault(player.location(), destination, ImmutableSet.of())) { // if there is no connection between player location and
-																														// destination it returns an empty set
-					if (player.has(t.requiredTicket())) moves.add(new Move.SingleMove(player.piece(), player.location(), t.requiredTicket(), destination)); // if player has required ticket a new move is added to set
+				for (int tickets = usableTickets(edge, held); tickets != 0; tickets &= tickets - 1) { // one bit for each ticket the player can use, so secret is only pushed once even on ferry edges
+					sink.single(piece, player.location(), Integer.numberOfTrailingZeros(tickets), destination);
 				}
-				if (player.has(Ticket.SECRET)) moves.add(new Move.SingleMove(mrX.piece(), mrX.location(), Ticket.SECRET, destination));//secret ticket implementation only for mrX
-
 			}
-			return moves;
 		}
 
 		// getWinner & its helper functions
@@ -132,8 +192,10 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		}
 
 		private boolean isMrXSurrounded() {	// check if MrX is surrounded by the detectives
-			for (int neighbor : setup.graph.adjacentNodes(mrX.location())) {
-				if (!isNodeOccupiedByDetective(neighbor)) {
+			int source = graph.indexOf(mrX.location());
+			if (source < 0) return true; // no neighbours at all
+			for (int edge = graph.edgeStart(source); edge < graph.edgeEnd(source); edge++) {
+				if (!isOccupiedByDetective(graph.target(edge))) {
 					return false; // mrX has at least one escape route
 				}
 			}
@@ -141,136 +203,237 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		}
 
 		private boolean areAllDetectivesStuck() {	// check if all detectives are stuck
-			for (Player detective : detectives) {
-				if (!generateSingleMoves(detective).isEmpty()) {
-					return false; // at least one detective has a move
-				}
-			}
-			return true;
+			return movable == 0; // no detective has a move
 		}
 
-		private ImmutableSet<Piece> getDetectiveWinners() {	// adds detectives to Hashset if they're winners
-			Set<Piece> winningDetectives = new HashSet<>();
-			for (Player detective : detectives) {
-				winningDetectives.add(detective.piece());
-			}
-			return ImmutableSet.copyOf(winningDetectives);
+		private ImmutableSet<Piece> getDetectiveWinners() {	// all detectives win together
+			return detectivePieces;
 		}
 
 		private boolean isMrXStuck() {	// check if MrX is stuck (his turn, but no moves available)
-			return remaining.contains(mrX.piece()) && generateSingleMoves(mrX).isEmpty();
+			return remaining.contains(mrX.piece()) && !hasSingleMove(mrX, occupied);
 		}
 
-		@Nonnull @Override public ImmutableSet<Piece> getWinner() {
-			if (!winner.isEmpty()) return winner;
-
-			if (isMrXWinnerByRoundsFinished()) winner = ImmutableSet.of(mrX.piece());
-			else if (isMrXCaughtByDetectives()) winner = getDetectiveWinners();
-			else if (isMrXSurrounded()) winner = getDetectiveWinners();
-			else if (areAllDetectivesStuck()) winner = ImmutableSet.of(mrX.piece());
-			else if (isMrXStuck()) winner = getDetectiveWinners();
+		private ImmutableSet<Piece> findWinner() { // checks every way the game can end, empty if it has not; only called by the constructor
+			if (isMrXWinnerByRoundsFinished()) return ImmutableSet.of(mrX.piece());
+			if (isMrXCaughtByDetectives()) return getDetectiveWinners();
+			if (isMrXSurrounded()) return getDetectiveWinners();
+			if (areAllDetectivesStuck()) return ImmutableSet.of(mrX.piece());
+			if (isMrXStuck()) return getDetectiveWinners();
+			return ImmutableSet.of();
+		}
 
+		@Nonnull @Override public ImmutableSet<Piece> getWinner() {
 			return winner;
 		}
 
-		//getAvailableMoves and it's helper functions
+		@Override public long zobristKey() { // kept up to date by updatedState so this is just a read
+			return zobrist;
+		}
 
-		private Set<Move.SingleMove> getMrXSingleMoves() {// returns a set of valid SingleMoves for MrX
-			Set<Move.SingleMove> singleMoves = generateSingleMoves(mrX);
-			singleMoves.removeIf(move -> isNodeOccupiedByDetective(move.destination)); //remove any move where destination is occupied by a detective
-			return singleMoves;
+		@Override public long canonicalKey() { // mrX's part of the key as usual, detectives without their colours
+			long key = Zobrist.round(log.size()) ^ Zobrist.player(mrX);
+			if (remaining.contains(mrX.piece())) key ^= Zobrist.toMove(ScotlandYard.ALL_PIECES.indexOf(mrX.piece()));
+			for (Player detective : detectives) {
+				key ^= Zobrist.anyDetective(detective, remaining.contains(detective.piece()));
+			}
+			return key;
 		}
 
-		private Set<Move.SingleMove> getMrXSingleMovesAfter(Player mrX) {
-			// generate single moves for MrX AFTER the first move
-			// used as a bridge to get double moves
-			Set<Move.SingleMove> secondMoves = generateSingleMoves(mrX);
-			secondMoves.removeIf(move -> isNodeOccupiedByDetective(move.destination));
-			return secondMoves;
+		@Nonnull @Override public ImmutableList<Detective> canonicalDetectives() { // detectives never share a location, so sorting by it is a total order
+			return detectives.stream()
+					.sorted(Comparator.comparingInt(Player::location))
+					.map(detective -> (Detective) detective.piece())
+					.collect(ImmutableList.toImmutableList());
 		}
 
+		//getAvailableMoves and it's helper functions
+
 		private boolean canMrXUseDoubleMove() {	// check if MrX can use a double move
 			return mrX.has(Ticket.DOUBLE) && setup.moves.size() > log.size() + 1; //checks if mrX has double ticket and if total available rounds have 2 space
 		}
 
-		private Set<Move> addMrXDoubleMoves(Set<Move.SingleMove> singleMoves) { //returns set of double moves for mrx
-			Set<Move> moves = new HashSet<>();
+		private void generateMrXDoubleMoves(MoveSink sink) { //pushes all double moves for mrx into the sink by filtering the graph's precomputed two-hop entries
+			int source = graph.indexOf(mrX.location());
+			if (source < 0) return;
+			MoveTable table = graph.moveTable();
+			int piece = ScotlandYard.ALL_PIECES.indexOf(mrX.piece());
+			int held = mrX.heldMask();
+			int twice = 0; // tickets mrX has more than one of, the only ones that can be used for both moves
+			for (Ticket t : Ticket.values()) {
+				if (mrX.count(t) > 1) twice |= 1 << t.ordinal();
+			}
+
+			for (int entry = table.twoHopStart(source); entry < table.twoHopEnd(source); entry++) {
+				int ticket1 = table.twoHopTicket1(entry);
+				int ticket2 = table.twoHopTicket2(entry);
+				if ((held & (1 << ticket1)) == 0 || (held & (1 << ticket2)) == 0) continue; // mrX is missing a ticket
+				if (ticket1 == ticket2 && (twice & (1 << ticket1)) == 0) continue; // same ticket twice but mrX only has one
+				int middle = table.twoHopMiddle(entry);
+				int target = table.twoHopTarget(entry);
+				if (isOccupiedByDetective(middle) || isOccupiedByDetective(target)) continue;
+				sink.doubleMove(piece, mrX.location(), ticket1, graph.nodeAt(middle), ticket2, graph.nodeAt(target));
+			}
+		}
 
-			singleMoves.removeIf(move -> !mrX.has(move.ticket));	// remove first moves if MrX doesn't have the ticket
+		private boolean isToMove(Player player) { // true if it is the player's turn, mrX plays alone on his turn
+			if (remaining.contains(mrX.piece())) return player.isMrX();
+			return remaining.contains(player.piece());
+		}
 
-			for (Move.SingleMove firstMove : singleMoves) {
-				Player mrX2 = mrX.at(firstMove.destination); //mrX2 acting as a bridge in the double move
-				Set<Move.SingleMove> secondMoves = getMrXSingleMovesAfter(mrX2); //get the second moves
+		private void generateMoves(Player player, MoveSink sink) { // pushes the moves of one player, who has to be to move
+			generateSingleMoves(player, sink);
+			if (player.isMrX() && canMrXUseDoubleMove()) generateMrXDoubleMoves(sink);
+		}
 
-				secondMoves.removeIf(move -> !mrX.has(move.ticket));// remove second moves if MrX doesn't have the ticket
+		@Override public void generateMoves(@Nonnull MoveSink sink) { // pushes the moves of whoever is to play, nothing if the game is over
+			if (!getWinner().isEmpty()) return;
 
-				for (Move.SingleMove secondMove : secondMoves) {
-					if (mrX.tickets().get(firstMove.ticket) > 1 || firstMove.ticket != secondMove.ticket) { // if mrX has more than one type of ticket for its first move or both moves require different tickets
-						moves.add(new Move.DoubleMove( //add double move to the set of moves
-								mrX.piece(), mrX.location(), firstMove.ticket, firstMove.destination, secondMove.ticket, secondMove.destination));
-					}
+			if (isToMove(mrX)) generateMoves(mrX, sink); // if mrX is remaining push mrX moves
+			else {
+				for (Player detective : detectives) {
+					if (isToMove(detective)) generateMoves(detective, sink); // else push moves of detectives still to move
 				}
 			}
+		}
+
+		private ImmutableSet<Move> findAvailableMoves() { // collects the generated moves into a set, reusing the graph's canonical move objects
+			ImmutableSet.Builder<Move> moves = ImmutableSet.builder();
+			generateMoves(graph.moveTable().sink(moves::add));
+			return moves.build();
+		}
+
+		@Nonnull @Override
+		public ImmutableSet<Move> getAvailableMoves() { // generated once per state, later calls return the same set
+			ImmutableSet<Move> moves = this.moves;
+			if (moves == null) this.moves = moves = findAvailableMoves();
 			return moves;
 		}
 
-		private Set<Move> addMrXMoves() {// add all  moves for MrX and return set
-			Set<Move> moves = new HashSet<>();
 
-			Set<Move.SingleMove> singleMoves = getMrXSingleMoves(); //set of single moves available
-			moves.addAll(singleMoves); //add the single moves to set of moves
+		@Nonnull @Override
+		public ImmutableSet<Move> getAvailableMoves(@Nonnull Piece piece) { // only generates the given piece's moves, reusing the full set if it is already there
+			if (!getWinner().isEmpty()) return ImmutableSet.of();
+			Player player = piece.isMrX() ? (mrX.piece().equals(piece) ? mrX : null) : getDetective(piece);
+			if (player == null || !isToMove(player)) return ImmutableSet.of();
+			ImmutableSet<Move> moves = this.moves;
+			if (moves != null && (player.isMrX() || remaining.size() == 1)) return moves; // the piece is the only one to move
+			ImmutableSet.Builder<Move> builder = ImmutableSet.builder();
+			generateMoves(player, graph.moveTable().sink(builder::add));
+			return builder.build();
+		}
 
-			if (canMrXUseDoubleMove()) {
-				moves.addAll(addMrXDoubleMoves(singleMoves)); // return double moves and add them
+		private int countSingleMoves(Player player) { // counts what generateSingleMoves would push, without pushing
+			int source = graph.indexOf(player.location());
+			if (source < 0) return 0;
+			int held = player.heldMask();
+			int count = 0;
+			for (int edge = graph.edgeStart(source); edge < graph.edgeEnd(source); edge++) {
+				if (!isOccupiedByDetective(graph.target(edge))) count += Integer.bitCount(usableTickets(edge, held)); // one move per usable ticket
 			}
+			return count;
+		}
 
-			return moves;
+		private int countMrXDoubleMoves() { // counts what generateMrXDoubleMoves would push, with the same filters
+			int source = graph.indexOf(mrX.location());
+			if (source < 0) return 0;
+			MoveTable table = graph.moveTable();
+			int held = mrX.heldMask();
+			int count = 0;
+			for (int entry = table.twoHopStart(source); entry < table.twoHopEnd(source); entry++) {
+				int ticket1 = table.twoHopTicket1(entry);
+				int ticket2 = table.twoHopTicket2(entry);
+				if ((held & (1 << ticket1)) == 0 || (held & (1 << ticket2)) == 0) continue;
+				if (ticket1 == ticket2 && mrX.count(CompiledGraph.ticket(ticket1)) < 2) continue;
+				if (isOccupiedByDetective(table.twoHopMiddle(entry)) || isOccupiedByDetective(table.twoHopTarget(entry))) continue;
+				count++;
+			}
+			return count;
 		}
 
-		private Set<Move> addDetectiveMoves() { //add all moves for detectives and return set
-			Set<Move> moves = new HashSet<>();
+		@Override public int countAvailableMoves() { // counts the moves without making them, or reads the size if they are already made
+			ImmutableSet<Move> moves = this.moves;
+			if (moves != null) return moves.size();
+			if (!getWinner().isEmpty()) return 0;
 
+			if (isToMove(mrX)) return countSingleMoves(mrX) + (canMrXUseDoubleMove() ? countMrXDoubleMoves() : 0);
+			int count = 0;
 			for (Player detective : detectives) {
-				if (remaining.contains(detective.piece())) { //if detective is still in game(remaining) add the generated single moves to the move set
-					moves.addAll(generateSingleMoves(detective));
-				}
+				if (isToMove(detective)) count += countSingleMoves(detective);
 			}
+			return count;
+		}
 
-			return moves;
+		@Override public boolean hasAnyMove(@Nonnull Piece piece) { // a double move starts with a single one, so a single move is enough to look for
+			if (!getWinner().isEmpty()) return false;
+			if (piece.isMrX()) return mrX.piece().equals(piece) && isToMove(mrX); // mrX always has a move on his turn, otherwise he is stuck and has lost
+			int index = indexOfDetective(piece);
+			return index >= 0 && isToMove(detectives.get(index)) && (movable & (1 << index)) != 0;
 		}
 
-		@Nonnull @Override
-		public ImmutableSet<Move> getAvailableMoves() { // returns a copy of the set of moves
-			if (!winner.isEmpty()) {
-				return ImmutableSet.of(); // if there is a winner return an empty set
+		@Nonnull @Override public ImmutableSet<Piece> getPiecesToMove() { // read off the movable bits rather than the moves
+			if (!getWinner().isEmpty()) return ImmutableSet.of();
+			if (isToMove(mrX)) return ImmutableSet.of(mrX.piece()); // mrX always has a move on his turn, otherwise he is stuck and has lost
+			ImmutableSet.Builder<Piece> pieces = ImmutableSet.builder();
+			for (int i = 0; i < detectives.size(); i++) {
+				if (isToMove(detectives.get(i)) && (movable & (1 << i)) != 0) pieces.add(detectives.get(i).piece());
 			}
+			return pieces.build();
+		}
+
 
-			Set<Move> moves = new HashSet<>();
+		private final class Shared { // work every child of this state would otherwise repeat, made once per advance or advanceAll
+			final long mrXKey = Zobrist.player(mrX); // key of mrX as he is in this state
+			final long toMoveKey = Zobrist.toMove(remaining); // key of the pieces to move in this state
+			final long afterMrXKey; // key swap of the pieces to move when mrX has moved, 0 on a detective turn
+			final Player[] rewardedMrX; // mrX given each ticket, made up front when every child is wanted and null otherwise
 
-			if (remaining.contains(mrX.piece())) {
-				moves.addAll(addMrXMoves()); // if mrX is remaining add mrX moves to set of moves
-			} else {
-				moves.addAll(addDetectiveMoves()); // else add detective moves
+			Shared(boolean allChildren) {
+				boolean mrXTurn = remaining.contains(mrX.piece());
+				afterMrXKey = mrXTurn ? toMoveKey ^ Zobrist.toMove(detectivePieces) : 0;
+				rewardedMrX = allChildren && !mrXTurn ? new Player[Ticket.values().length] : null;
+				if (rewardedMrX != null) {
+					for (Ticket t : Ticket.values()) rewardedMrX[t.ordinal()] = mrX.adjust(t, 1);
+				}
 			}
 
-			return ImmutableSet.copyOf(moves);
+			Player rewardedMrX(Ticket ticket) { // mrX after a detective has given him the ticket
+				return rewardedMrX != null ? rewardedMrX[ticket.ordinal()] : mrX.adjust(ticket, 1);
+			}
 		}
 
+		private GameState updatedState(Player updatedPlayer, Player updatedMrX, ImmutableList<LogEntry> newLog, Shared shared) { //provides an updated game state after single or double move processed
+			long updatedZobrist = zobrist ^ shared.mrXKey ^ Zobrist.player(updatedMrX) // swap the keys of everything that changed
+					^ Zobrist.round(log.size()) ^ Zobrist.round(newLog.size());
+
+			if (updatedPlayer.isMrX()) {// if it's MrX’s turn, reset turns to all detectives after move, who stay where they are and keep their moves
+				return new MyGameState(setup, detectivePieces, newLog, updatedMrX, detectives, occupied, movable, detectivePieces, updatedZobrist ^ shared.afterMrXKey);
+			}
 
-		private GameState updatedState(Player updatedPlayer, List<LogEntry> newLog) { //provides an updated game state after single or double move processed
 			List<Player> updatedDetectives = new ArrayList<>(detectives); // starts with current detectives
 			Set<Piece> updatedRemaining = new HashSet<>(remaining); // starts with current remaining
-
-			if (!updatedPlayer.isMrX()) {// if the player moved is a detective, remove them from remaining
-				updatedRemaining.remove(updatedPlayer.piece());
-
-				updatedDetectives.removeIf(d -> d.piece().equals(updatedPlayer.piece()));// replaces detective in the list
-				updatedDetectives.add(updatedPlayer); // adds the updated version (updated player) to the updated detectives
+			int updatedMovable = movable;
+
+			updatedRemaining.remove(updatedPlayer.piece()); // the detective that moved is done for this round
+			int moved = indexOfDetective(updatedPlayer.piece());
+			int from = detectives.get(moved).location();
+			updatedZobrist ^= Zobrist.player(detectives.get(moved)) ^ Zobrist.player(updatedPlayer);
+			updatedDetectives.set(moved, updatedPlayer); // replaces detective in the list, keeping the order
+
+			long[] updatedOccupied = occupied.clone(); // move the detective's bit from its old node to its new one
+			setOccupied(updatedOccupied, graph, from, false);
+			setOccupied(updatedOccupied, graph, updatedPlayer.location(), true);
+
+			for (int i = 0; i < updatedDetectives.size(); i++) { // only the detective that moved and its old and new neighbours can have gained or lost a move
+				Player d = updatedDetectives.get(i);
+				if (i != moved && !isNextTo(d, from) && !isNextTo(d, updatedPlayer.location())) continue;
+				if (hasSingleMove(d, updatedOccupied)) updatedMovable |= 1 << i;
+				else updatedMovable &= ~(1 << i);
 			}
 
 			boolean detectivesStillMoving = false;
-			for (Player d : updatedDetectives) { //checks if there is any detectives left to move
-				if (updatedRemaining.contains(d.piece()) && !generateSingleMoves(d).isEmpty()) { //if piece of player d is still in game and has available moves then detectives still moving
+			for (int i = 0; i < updatedDetectives.size(); i++) { //checks if there is any detectives left to move, judged after the move
+				if (updatedRemaining.contains(updatedDetectives.get(i).piece()) && (updatedMovable & (1 << i)) != 0) { //if piece of player d is still in game and has available moves then detectives still moving
 					detectivesStillMoving = true;
 					break;//loop breaks once we find one detective who can still move
 				}
@@ -282,101 +445,163 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				updatedRemaining.add(mrX.piece()); // only MrX can move now
 			}
 
-			if (updatedPlayer.isMrX()) {// if it's MrX’s turn, reset turns to all detectives after move
-				updatedRemaining.clear();
-				for (Player d : updatedDetectives) {
-					updatedRemaining.add(d.piece()); //all detectives being added back to updated remaining
-				}
-			}
+			updatedZobrist ^= shared.toMoveKey ^ Zobrist.toMove(updatedRemaining);
 
 		// returns updated game state
-			return new MyGameState(setup, ImmutableSet.copyOf(updatedRemaining), ImmutableList.copyOf(newLog), updatedPlayer.isMrX() ? updatedPlayer : mrX, updatedDetectives);
+			return new MyGameState(setup, ImmutableSet.copyOf(updatedRemaining), newLog, updatedMrX, updatedDetectives, updatedOccupied, updatedMovable, detectivePieces, updatedZobrist);
 		}
 
+		private LogEntry logEntry(int moveIndex, Ticket ticket, int destination) { // log MrX's move based on the reveal schedule
+			return setup.moves.get(moveIndex) ? LogEntry.reveal(ticket, destination) : LogEntry.hidden(ticket);
+		}
 
-		private GameState processSingleMove(Player player, Move.SingleMove singleMove) { //process a single move
-			List<LogEntry> newLog = new ArrayList<>(log);	// create a copy of the current move log
-
-			Map<Ticket, Integer> newTickets = new HashMap<>(player.tickets());// create a copy of the player's ticket map
-			newTickets.put(singleMove.ticket, newTickets.get(singleMove.ticket) - 1);//reduce the used ticket amount
-
-			// create an updated player
-			Player updatedPlayer = new Player(player.piece(), ImmutableMap.copyOf(newTickets), singleMove.destination);
+		private GameState processSingleMove(Player player, Move.SingleMove singleMove, Shared shared) { //process a single move
+			// create an updated player with the used ticket taken away
+			Player updatedPlayer = player.adjust(singleMove.ticket, -1).at(singleMove.destination);
 
 			if (player.isMrX()) {
-				int moveIndex = newLog.size();// determine the correct move index based on the log size
-				boolean revealMove = setup.moves.get(moveIndex); // determine where move should be revealed or hidden
-
-				// log MrX's move based on the reveal schedule
-				newLog.add(revealMove ? LogEntry.reveal(singleMove.ticket, singleMove.destination) : LogEntry.hidden(singleMove.ticket));
-			} else {
-				// if a detective moves, give used ticket to mrX
-				Map<Ticket, Integer> mrXTickets = new HashMap<>(mrX.tickets());
-				mrXTickets.put(singleMove.ticket, mrXTickets.getOrDefault(singleMove.ticket, 0) + 1);
-
-				mrX = new Player(mrX.piece(), ImmutableMap.copyOf(mrXTickets), mrX.location());// update MrX with the new ticket count
+				ImmutableList<LogEntry> newLog = ImmutableList.<LogEntry>builderWithExpectedSize(log.size() + 1)
+						.addAll(log)
+						.add(logEntry(log.size(), singleMove.ticket, singleMove.destination)) // the move index is the log size
+						.build();
+				return updatedState(updatedPlayer, updatedPlayer, newLog, shared);
 			}
-
-			// return the updated GameState with the new log and updated player
-			return updatedState(updatedPlayer, newLog);
+			// if a detective moves, give used ticket to mrX; MrX of the next state gets the ticket, this state is left as it was
+			// detectives are not logged so the log is shared as it is
+			return updatedState(updatedPlayer, shared.rewardedMrX(singleMove.ticket), log, shared);
 		}
 
-		private GameState processDoubleMove(Player player, Move.DoubleMove doubleMove) {// processes a DoubleMove
+		private GameState processDoubleMove(Player player, Move.DoubleMove doubleMove, Shared shared) {// processes a DoubleMove
 
 			if (!player.isMrX()) { //only mrX can make a double move
 				throw new IllegalArgumentException("Only MrX can perform a double move!");
 			}
 
-			List<LogEntry> newLog = new ArrayList<>(log);// create a copy of the move log for this update
+			// create an updated version of MrX with the used tickets deducted, similar to single move
+			Player updatedMrX = player
+					.adjust(doubleMove.ticket1, -1) //ticket one used
+					.adjust(doubleMove.ticket2, -1) //ticket two used
+					.adjust(Ticket.DOUBLE, -1) // Double move ticket used
+					.at(doubleMove.destination2);
 
-			// create a copy of the player's ticket map and deduct the used tickets, similar to single move
-			Map<Ticket, Integer> newTickets = new HashMap<>(player.tickets());
-			newTickets.put(doubleMove.ticket1, newTickets.get(doubleMove.ticket1) - 1); //ticket one used
-			newTickets.put(doubleMove.ticket2, newTickets.get(doubleMove.ticket2) - 1); //ticket two used
-			newTickets.put(Ticket.DOUBLE, newTickets.get(Ticket.DOUBLE) - 1); // Double move ticket used
+			// log both moves, each revealed or hidden on its own
+			ImmutableList<LogEntry> newLog = ImmutableList.<LogEntry>builderWithExpectedSize(log.size() + 2)
+					.addAll(log)
+					.add(logEntry(log.size(), doubleMove.ticket1, doubleMove.destination1))
+					.add(logEntry(log.size() + 1, doubleMove.ticket2, doubleMove.destination2))
+					.build();
 
-			// create an updated version of MrX
-			Player updatedMrX = new Player(player.piece(), ImmutableMap.copyOf(newTickets), doubleMove.destination2);
-
-			// determine if the first move should be revealed
-			int moveIndex1 = newLog.size();
-			newLog.add(setup.moves.get(moveIndex1) ? LogEntry.reveal(doubleMove.ticket1, doubleMove.destination1)
-					: LogEntry.hidden(doubleMove.ticket1));
+			// return the updated GameState
+			return updatedState(updatedMrX, updatedMrX, newLog, shared);
+		}
 
-			// determine if the second move should be revealed
-			int moveIndex2 = newLog.size();
-			newLog.add(setup.moves.get(moveIndex2) ? LogEntry.reveal(doubleMove.ticket2, doubleMove.destination2)
-						: LogEntry.hidden(doubleMove.ticket2));
+		private GameState play(Move move, Shared shared) { // makes a move already known to be legal
+			Player player = move.commencedBy().isMrX() ? mrX : getDetective(move.commencedBy()); // identify the player making the move
 
+			if (player == null) throw new IllegalArgumentException("Player not found");// if player is null (none selected) throw error
 
-			// return the updated GameState
-			return updatedState(updatedMrX, newLog);
+			// instanceof rather than a visitor, isLegal has already ruled out any other kind of move
+			if (move instanceof Move.SingleMove) return processSingleMove(player, (Move.SingleMove) move, shared);
+			return processDoubleMove(player, (Move.DoubleMove) move, shared);
 		}
 
+		@Nonnull @Override public ImmutableMap<Move, GameState> advanceAll() { // every child made from one set of shared work, without checking the moves again
+			ImmutableSet<Move> moves = getAvailableMoves();
+			Shared shared = new Shared(true);
+			ImmutableMap.Builder<Move, GameState> children = ImmutableMap.builderWithExpectedSize(moves.size());
+			for (Move move : moves) children.put(move, play(move, shared));
+			return children.build();
+		}
 
+		@Nonnull @Override public ImmutableMap<Move, GameState> advanceAll(@Nonnull ForkJoinPool pool) { // as above but the children are made on the pool, shared is never written after it is made
+			ImmutableList<Move> moves = getAvailableMoves().asList();
+			Shared shared = new Shared(true);
+			GameState[] children = pool.invoke(ForkJoinTask.adapt(() -> moves.parallelStream()
+					.map(move -> play(move, shared))
+					.toArray(GameState[]::new)));
+			ImmutableMap.Builder<Move, GameState> builder = ImmutableMap.builderWithExpectedSize(moves.size());
+			for (int i = 0; i < children.length; i++) builder.put(moves.get(i), children[i]);
+			return builder.build();
+		}
 
-		@Nonnull @Override public GameState advance(Move move) {
-			Set<Move> availableMoves = getAvailableMoves();
-			if (!availableMoves.contains(move)) throw new IllegalArgumentException("Illegal move: "+move);	// ensures move is valid
+		@Nonnull @Override public PackedPosition packedPosition() { // packs this state for SearchState
+			return PackedPosition.resume(setup, mrX, detectives, remaining, log);
+		}
 
-			Player player = move.commencedBy().isMrX() ? mrX : getDetective(move.commencedBy()); // identify the player making the move
+		private boolean isLegalStep(Player player, int from, Ticket ticket, int to) { // true if the player can go from one node to a free neighbour with the ticket, the same checks generateSingleMoves makes
+			int source = graph.indexOf(from);
+			if (source < 0) return false;
+			int edge = graph.edgeTo(source, to);
+			return edge >= 0
+					&& !isOccupiedByDetective(graph.target(edge))
+					&& (usableTickets(edge, player.heldMask()) & (1 << ticket.ordinal())) != 0;
+		}
 
-			if (player == null) throw new IllegalArgumentException("Player not found");// if player is null (none selected) throw error
+		private boolean isLegal(Move move) { // same answer as getAvailableMoves().contains(move) but only looks at the moving piece, so no moves are generated
+			if (move == null || !getWinner().isEmpty()) return false;
+			Player player;
+			if (remaining.contains(mrX.piece())) player = move.commencedBy().equals(mrX.piece()) ? mrX : null; // only mrX plays on his turn
+			else player = remaining.contains(move.commencedBy()) ? getDetective(move.commencedBy()) : null; // any detective still to move
+			if (player == null || move.source() != player.location()) return false;
+
+			// instanceof rather than a visitor so that checking a move does not allocate
+			if (move instanceof Move.SingleMove) {
+				Move.SingleMove m = (Move.SingleMove) move;
+				return isLegalStep(player, m.source(), m.ticket, m.destination);
+			}
+			if (!(move instanceof Move.DoubleMove)) return false;
+			Move.DoubleMove m = (Move.DoubleMove) move;
+			return player.isMrX()
+					&& canMrXUseDoubleMove()
+					&& (m.ticket1 != m.ticket2 || player.count(m.ticket1) > 1) // the same ticket twice needs two of them
+					&& isLegalStep(player, m.source(), m.ticket1, m.destination1)
+					&& isLegalStep(player, m.destination1, m.ticket2, m.destination2);
+		}
 
+		@Nonnull @Override public GameState advance(Move move) {
+			if (!isLegal(move)) throw new IllegalArgumentException("Illegal move: "+move);	// ensures move is valid
+			return play(move, new Shared(false));
+		}
+	}
 
+	private static boolean isOccupied(long[] occupied, int index) { //checks the bit of a graph index
+		return (occupied[index >>> 6] & (1L << index)) != 0;
+	}
 
-			return move.accept(new Move.Visitor<>() {// process the move using the visitor pattern
-				@Override public GameState visit(Move.SingleMove singleMove) {
-                    return processSingleMove(player, singleMove);
-                }
+	private static void setOccupied(long[] occupied, CompiledGraph graph, int location, boolean value) { //sets or clears the bit of a location, locations off the graph have no bit
+		int index = graph.indexOf(location);
+		if (index < 0) return;
+		if (value) occupied[index >>> 6] |= 1L << index;
+		else occupied[index >>> 6] &= ~(1L << index);
+	}
 
-                @Override public GameState visit(Move.DoubleMove doubleMove) {
-                    return processDoubleMove(player, doubleMove);
-                }
-            });
+	private static void validate(GameSetup setup, Player mrX, List<Player> detectives) { //checks the setup and players a game is started with
+		if (setup.moves.isEmpty()) throw new IllegalArgumentException("No available moves!");
+		if (detectives.isEmpty()) throw new IllegalArgumentException("No detectives found!");
+		if (detectives.size() >= Integer.SIZE) throw new IllegalArgumentException("Too many detectives!"); // movable has one bit per detective and the sign bit means not known
+		if (!mrX.isMrX()) throw new IllegalArgumentException("MrX is null!");
+		if (setup.graph.nodes().isEmpty()) throw new IllegalArgumentException("Graph is empty!");
+
+		Set<Integer> locations = new HashSet<>();
+		Set<Piece> pieces = new HashSet<>();
+		for (Player detective : detectives) {
+			if (detective.isMrX()) throw new IllegalArgumentException("Detective cannot be MrX!");
+			if (detective.has(Ticket.SECRET)) throw new IllegalArgumentException("Detective cannot have secret tickets!");
+			if (detective.has(Ticket.DOUBLE)) throw new IllegalArgumentException("Detective cannot have double tickets!");
+			if (!locations.add(detective.location())) throw new IllegalArgumentException("Duplicate detective location found!");
+			if (!pieces.add(detective.piece())) throw new IllegalArgumentException("Duplicate detective found!");
 		}
 	}
 
-	@Nonnull @Override public GameState build(GameSetup setup, Player mrX, ImmutableList<Player> detectives)
-	{return new MyGameState(setup, ImmutableSet.of(mrX.piece()), ImmutableList.of(), mrX, detectives);} //return game state
+	@Nonnull @Override public GameState build(GameSetup setup, Player mrX, ImmutableList<Player> detectives) {
+		validate(setup, mrX, detectives); // the only check a game gets unless validateStates is set, states made from here on are trusted
+		CompiledGraph graph = setup.compiledGraph();
+		long[] occupied = new long[(graph.nodeCount() + 63) >>> 6]; // bits for where the detectives start
+		for (Player detective : detectives) setOccupied(occupied, graph, detective.location(), true);
+		ImmutableSet<Piece> detectivePieces = detectives.stream().map(Player::piece).collect(ImmutableSet.toImmutableSet());
+		ImmutableSet<Piece> remaining = ImmutableSet.of(mrX.piece()); // mrX always starts
+		long zobrist = Zobrist.player(mrX) ^ Zobrist.toMove(remaining) ^ Zobrist.round(0); // key of the whole starting position
+		for (Player detective : detectives) zobrist ^= Zobrist.player(detective);
+		return new MyGameState(setup, remaining, ImmutableList.of(), mrX, detectives, occupied, -1, detectivePieces, zobrist); //return game state
+	}
 }
\ No newline at end of file
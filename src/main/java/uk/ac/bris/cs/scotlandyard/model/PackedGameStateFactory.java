@@ -0,0 +1,143 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * A {@link GameState} factory for search, with the same rules as {@link MyGameStateFactory}.
+ * <br>
+ * Each state is a {@link PackedPosition}: a handful of primitive words instead of {@link Player}s,
+ * ticket maps and immutable collections, so {@link GameState#advance(Move)} only copies a small
+ * {@code long[]}. Collections returned by the {@link Board} methods are built on demand.
+ */
+public final class PackedGameStateFactory implements Factory<GameState> {
+
+	private static final class PackedGameState implements GameState, PackedPosition.Source {
+
+		private final PackedPosition position; // never mutated once the state is published
+		private volatile ImmutableList<LogEntry> log;
+		private volatile ImmutableSet<Piece> winner;
+		private volatile ImmutableSet<Move> moves;
+
+		private PackedGameState(PackedPosition position) { this.position = position; }
+
+		@Nonnull @Override public GameSetup getSetup() { return position.setup; }
+
+		@Nonnull @Override public ImmutableSet<Piece> getPlayers() {
+			return ImmutableSet.copyOf(position.pieces);
+		}
+
+		@Nonnull @Override public Optional<Integer> getDetectiveLocation(Detective detective) {
+			int slot = position.slotOf(detective);
+			return slot < 0 ? Optional.empty() : Optional.of(position.location(slot));
+		}
+
+		@Nonnull @Override public Optional<TicketBoard> getPlayerTickets(Piece piece) {
+			int slot = position.slotOf(piece);
+			if (slot < 0) return Optional.empty();
+			return Optional.of(ticket -> position.tickets(slot, ticket.ordinal()));
+		}
+
+		@Nonnull @Override public ImmutableList<LogEntry> getMrXTravelLog() {
+			ImmutableList<LogEntry> log = this.log;
+			if (log == null) this.log = log = position.travelLog();
+			return log;
+		}
+
+		@Nonnull @Override public ImmutableSet<Piece> getWinner() {
+			ImmutableSet<Piece> winner = this.winner;
+			if (winner == null) this.winner = winner = position.pieces(position.winnerMask());
+			return winner;
+		}
+
+		@Nonnull @Override public ImmutableSet<Move> getAvailableMoves() {
+			ImmutableSet<Move> moves = this.moves;
+			if (moves == null) this.moves = moves =
+					getWinner().isEmpty() ? position.availableMoves() : ImmutableSet.of();
+			return moves;
+		}
+
+		@Nonnull @Override public ImmutableSet<Move> getAvailableMoves(@Nonnull Piece piece) {
+			int slot = position.slotOf(piece);
+			if (slot < 0 || !getWinner().isEmpty()) return ImmutableSet.of();
+			return position.availableMoves(slot);
+		}
+
+		@Nonnull @Override public ImmutableSet<Piece> getPiecesToMove() {
+			return getWinner().isEmpty() ? position.pieces(position.moversMask()) : ImmutableSet.of();
+		}
+
+		@Override public int countAvailableMoves() {
+			ImmutableSet<Move> moves = this.moves;
+			if (moves != null) return moves.size();
+			return getWinner().isEmpty() ? position.countMoves() : 0;
+		}
+
+		@Override public boolean hasAnyMove(@Nonnull Piece piece) {
+			int slot = position.slotOf(piece);
+			return slot >= 0 && getWinner().isEmpty() && position.hasAnyMove(slot);
+		}
+
+		@Override public long zobristKey() { return position.key; }
+
+		@Override public long canonicalKey() { return position.canonicalKey(); }
+
+		@Nonnull @Override public ImmutableList<Detective> canonicalDetectives() {
+			return position.canonicalDetectives();
+		}
+
+		@Override public void generateMoves(@Nonnull MoveSink sink) {
+			if (getWinner().isEmpty()) position.generate(sink);
+		}
+
+		@Nonnull @Override public GameState advance(Move move) {
+			if (!getWinner().isEmpty() || !position.isLegal(move))
+				throw new IllegalArgumentException("Illegal move: " + move);
+			return play(move);
+		}
+
+		private PackedGameState play(Move move) { // the position is only read, so children can be made in parallel
+			PackedPosition next = position.fork();
+			next.play(move);
+			return new PackedGameState(next);
+		}
+
+		@Nonnull @Override public ImmutableMap<Move, GameState> advanceAll() {
+			ImmutableSet<Move> moves = getAvailableMoves();
+			ImmutableMap.Builder<Move, GameState> children = ImmutableMap.builderWithExpectedSize(moves.size());
+			for (Move move : moves) children.put(move, play(move)); // generated here, so legal without checking
+			return children.build();
+		}
+
+		@Nonnull @Override public ImmutableMap<Move, GameState> advanceAll(@Nonnull ForkJoinPool pool) {
+			ImmutableList<Move> moves = getAvailableMoves().asList();
+			GameState[] children = pool.invoke(ForkJoinTask.adapt(() -> moves.parallelStream()
+					.map(this::play)
+					.toArray(GameState[]::new)));
+			ImmutableMap.Builder<Move, GameState> builder = ImmutableMap.builderWithExpectedSize(moves.size());
+			for (int i = 0; i < children.length; i++) builder.put(moves.get(i), children[i]);
+			return builder.build();
+		}
+
+		@Nonnull @Override public PackedPosition packedPosition() { return position; }
+
+		@Override public String toString() { return position.toString(); }
+	}
+
+	@Nonnull @Override public GameState build(GameSetup setup,
+	                                          Player mrX,
+	                                          ImmutableList<Player> detectives) {
+		return new PackedGameState(PackedPosition.initial(setup, mrX, detectives));
+	}
+}
@@ -0,0 +1,589 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A mutable ScotlandYard position packed into primitive words, following the same rules as
+ * {@link MyGameStateFactory}.
+ * <br>
+ * Every player occupies one {@code long}: the location in the low 16 bits followed by one byte per
+ * {@link Ticket}, indexed by {@link Ticket#ordinal()}. Slot 0 is always MrX and the detectives
+ * follow in the order they were given. The pieces still to move are a bitmask of slots and the
+ * travel log is an array of packed entries of which the first {@link #round} are in use.
+ * <br>
+ * Tickets are only ever moved between players or spent, so no count can exceed the total of that
+ * ticket in the initial position; {@link #initial} rejects positions where that total does not fit
+ * in a byte.
+ */
+final class PackedPosition {
+
+	static final int MRX = 0;
+
+	private static final int LOCATION_MASK = 0xFFFF;
+	private static final int TICKET_SHIFT = 16;
+	private static final int TICKET_BITS = 8;
+	private static final int TICKET_MASK = (1 << TICKET_BITS) - 1;
+
+	private static final int SECRET = Ticket.SECRET.ordinal();
+	private static final int DOUBLE = Ticket.DOUBLE.ordinal();
+
+	// log entries: ticket in the low 3 bits, reveal flag, then the location
+	private static final int LOG_TICKET_MASK = 0x7;
+	private static final int LOG_REVEAL = 0x8;
+	private static final int LOG_LOCATION_SHIFT = 4;
+
+	/**
+	 * Implemented by game states that can hand out their position; callers must not play on it
+	 */
+	interface Source {
+		@Nonnull PackedPosition packedPosition();
+	}
+
+	final GameSetup setup;
+	final CompiledGraph graph;
+	final Piece[] pieces; // slot -> piece, shared between copies
+	final int[] pieceIds; // slot -> index in ScotlandYard.ALL_PIECES, shared between copies
+	final long[] players; // slot -> packed location and tickets
+	int remaining;        // bitmask of slots still to move
+	int movable;          // bitmask of detective slots that have a single move
+	int round;            // number of entries in the log
+	long key;             // Zobrist key, see Zobrist
+	private int[] log;
+	private boolean logShared;
+
+	private PackedPosition(GameSetup setup, Piece[] pieces, int[] pieceIds, long[] players,
+	                       int remaining, int movable, int round, long key,
+	                       int[] log, boolean logShared) {
+		this.setup = setup;
+		this.graph = setup.compiledGraph();
+		this.pieces = pieces;
+		this.pieceIds = pieceIds;
+		this.players = players;
+		this.remaining = remaining;
+		this.movable = movable;
+		this.round = round;
+		this.key = key;
+		this.log = log;
+		this.logShared = logShared;
+	}
+
+	/**
+	 * Validates and packs a new game, with the same checks as {@link MyGameStateFactory}
+	 *
+	 * @throws IllegalArgumentException if the game is invalid or does not fit the encoding
+	 */
+	@Nonnull static PackedPosition initial(GameSetup setup, Player mrX, List<Player> detectives) {
+		if (setup.moves.isEmpty()) throw new IllegalArgumentException("No available moves!");
+		if (detectives.isEmpty()) throw new IllegalArgumentException("No detectives found!");
+		if (!mrX.isMrX()) throw new IllegalArgumentException("MrX is null!");
+		if (setup.graph.nodes().isEmpty()) throw new IllegalArgumentException("Graph is empty!");
+
+		Set<Integer> locations = new HashSet<>();
+		Set<Piece> seen = new HashSet<>();
+		for (Player detective : detectives) {
+			if (detective.isMrX()) throw new IllegalArgumentException("Detective cannot be MrX!");
+			if (detective.has(Ticket.SECRET)) throw new IllegalArgumentException("Detective cannot have secret tickets!");
+			if (detective.has(Ticket.DOUBLE)) throw new IllegalArgumentException("Detective cannot have double tickets!");
+			if (!locations.add(detective.location())) throw new IllegalArgumentException("Duplicate detective location found!");
+			if (!seen.add(detective.piece())) throw new IllegalArgumentException("Duplicate detective found!");
+		}
+
+		Piece[] pieces = new Piece[detectives.size() + 1];
+		int[] pieceIds = new int[pieces.length];
+		long[] players = new long[pieces.length];
+		int[] totals = new int[Ticket.values().length];
+		for (int slot = 0; slot < pieces.length; slot++) {
+			Player player = slot == MRX ? mrX : detectives.get(slot - 1);
+			pieces[slot] = player.piece();
+			pieceIds[slot] = ScotlandYard.ALL_PIECES.indexOf(player.piece());
+			players[slot] = pack(player, totals);
+		}
+		for (int total : totals)
+			if (total > TICKET_MASK) throw new IllegalArgumentException("Too many tickets to pack: " + total);
+		PackedPosition position = new PackedPosition(setup, pieces, pieceIds, players, 1 << MRX, 0,
+				0, 0, new int[setup.moves.size()], false);
+		for (int slot = 1; slot < players.length; slot++)
+			if (position.hasSingleMove(slot)) position.movable |= 1 << slot;
+		position.key = position.fullKey();
+		return position;
+	}
+
+	/**
+	 * Validates and packs a game that is already under way
+	 *
+	 * @param remaining the pieces still to move
+	 * @param log MrX's travel log so far
+	 * @throws IllegalArgumentException if the game is invalid or does not fit the encoding
+	 */
+	@Nonnull static PackedPosition resume(GameSetup setup, Player mrX, List<Player> detectives,
+	                                      Set<Piece> remaining, List<LogEntry> log) {
+		PackedPosition position = initial(setup, mrX, detectives);
+		if (log.size() > setup.moves.size())
+			throw new IllegalArgumentException("Log is longer than the game: " + log.size());
+		position.remaining = 0;
+		for (Piece piece : remaining) {
+			int slot = position.slotOf(piece);
+			if (slot < 0) throw new IllegalArgumentException("Piece not in game: " + piece);
+			position.remaining |= 1 << slot;
+		}
+		for (LogEntry entry : log) {
+			int ticket = entry.ticket().ordinal();
+			position.log[position.round++] = entry.location()
+					.map(location -> ticket | LOG_REVEAL | location << LOG_LOCATION_SHIFT)
+					.orElse(ticket);
+		}
+		position.key = position.fullKey();
+		return position;
+	}
+
+	/**
+	 * @param board the board
+	 * @return the pieces still to move this round: read off the position of a {@link Source},
+	 * otherwise the pieces with a move, since a board alone cannot tell a detective that is still
+	 * to move but blocked for now from one that has moved
+	 */
+	@Nonnull static ImmutableSet<Piece> remaining(Board board) {
+		if (board instanceof Source) {
+			PackedPosition position = ((Source) board).packedPosition();
+			return position.pieces(position.remaining);
+		}
+		return board.getPiecesToMove();
+	}
+
+	private static long pack(Player player, int[] totals) {
+		if ((player.location() & ~LOCATION_MASK) != 0)
+			throw new IllegalArgumentException("Location out of packable range: " + player);
+		long word = player.location();
+		for (Ticket ticket : Ticket.values()) {
+			int count = player.count(ticket);
+			if (count < 0) throw new IllegalArgumentException("Negative ticket count: " + player);
+			totals[ticket.ordinal()] += count;
+			if (count > TICKET_MASK) continue; // rejected through the total
+			word |= (long) count << ticketShift(ticket.ordinal());
+		}
+		return word;
+	}
+
+	/**
+	 * @return an independent copy of this position
+	 */
+	@Nonnull PackedPosition copy() {
+		return new PackedPosition(setup, pieces, pieceIds, players.clone(), remaining, movable,
+				round, key, log.clone(), false);
+	}
+
+	/**
+	 * @return a copy that shares the log until its next append; this position must not be played
+	 * on afterwards
+	 */
+	@Nonnull PackedPosition fork() {
+		return new PackedPosition(setup, pieces, pieceIds, players.clone(), remaining, movable,
+				round, key, log, true);
+	}
+
+	private static int ticketShift(int ticket) { return TICKET_SHIFT + ticket * TICKET_BITS; }
+
+	int slotOf(Piece piece) {
+		for (int slot = 0; slot < pieces.length; slot++)
+			if (pieces[slot] == piece) return slot;
+		return -1;
+	}
+	int location(int slot) { return (int) players[slot] & LOCATION_MASK; }
+	int tickets(int slot, int ticket) {
+		return (int) (players[slot] >>> ticketShift(ticket)) & TICKET_MASK;
+	}
+	/**
+	 * @return the tickets held by the given slot as a bitmask of {@link Ticket#ordinal()}s
+	 */
+	int heldMask(int slot) {
+		int mask = 0;
+		for (int t = 0; t <= SECRET; t++)
+			if (tickets(slot, t) != 0) mask |= 1 << t;
+		return mask;
+	}
+	private void addTickets(int slot, int ticket, int delta) {
+		players[slot] += (long) delta << ticketShift(ticket);
+	}
+	private void moveTo(int slot, int location) {
+		players[slot] = (players[slot] & ~(long) LOCATION_MASK) | location;
+	}
+
+	boolean occupied(int location) {
+		for (int slot = 1; slot < players.length; slot++)
+			if (location(slot) == location) return true;
+		return false;
+	}
+
+	/**
+	 * @return the tickets that take the given slot along the given edge as a bitmask
+	 */
+	private int usableTickets(int edge, int held) {
+		return (graph.tickets(edge) & held) | (held & (1 << SECRET));
+	}
+
+	boolean hasSingleMove(int slot) {
+		int source = graph.indexOf(location(slot));
+		if (source < 0) return false;
+		int held = heldMask(slot);
+		if (held == 0) return false;
+		for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++)
+			if (usableTickets(e, held) != 0 && !occupied(graph.targetNode(e))) return true;
+		return false;
+	}
+
+	private boolean isSurrounded() {
+		int source = graph.indexOf(location(MRX));
+		if (source < 0) return true;
+		for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++)
+			if (!occupied(graph.targetNode(e))) return false;
+		return true;
+	}
+
+	/**
+	 * @return the winning slots as a bitmask; 0 if the game is not over
+	 */
+	int winnerMask() {
+		int detectives = ((1 << players.length) - 1) & ~(1 << MRX);
+		boolean mrXTurn = (remaining & (1 << MRX)) != 0;
+		if (round == setup.moves.size() && mrXTurn) return 1 << MRX;
+		if (occupied(location(MRX))) return detectives;
+		if (isSurrounded()) return detectives;
+		if (movable == 0) return 1 << MRX;
+		if (mrXTurn && !hasSingleMove(MRX)) return detectives;
+		return 0;
+	}
+
+	@Nonnull ImmutableSet<Piece> pieces(int mask) {
+		ImmutableSet.Builder<Piece> builder = ImmutableSet.builder();
+		for (int slot = 0; slot < pieces.length; slot++)
+			if ((mask & (1 << slot)) != 0) builder.add(pieces[slot]);
+		return builder.build();
+	}
+
+	/**
+	 * @return the slots with at least one move as a bitmask, assuming the game is not over
+	 */
+	int moversMask() {
+		if ((remaining & (1 << MRX)) != 0) return 1 << MRX; // MrX without a move has lost
+		return remaining & movable;
+	}
+
+	/**
+	 * Generates all moves of the pieces still to move, assuming the game is not over
+	 */
+	void generate(MoveSink sink) {
+		if ((remaining & (1 << MRX)) != 0) {
+			generate(MRX, sink);
+			return;
+		}
+		for (int slot = 1; slot < players.length; slot++)
+			if ((remaining & (1 << slot)) != 0) generateSingles(slot, sink);
+	}
+
+	/**
+	 * Generates the moves of the piece in the given slot, nothing if it is not its turn; assumes
+	 * the game is not over
+	 */
+	void generate(int slot, MoveSink sink) {
+		if ((remaining & (1 << slot)) == 0 || (slot != MRX && (remaining & (1 << MRX)) != 0)) return;
+		generateSingles(slot, sink);
+		if (slot != MRX || tickets(MRX, DOUBLE) == 0 || setup.moves.size() <= round + 1) return;
+		int location = location(MRX);
+		int source = graph.indexOf(location);
+		if (source < 0) return;
+		int held = heldMask(MRX);
+		int twice = 0; // tickets that can pay for both legs
+		for (int t = 0; t <= SECRET; t++)
+			if (tickets(MRX, t) > 1) twice |= 1 << t;
+		MoveTable table = graph.moveTable();
+		for (int entry = table.twoHopStart(source); entry < table.twoHopEnd(source); entry++) {
+			int ticket1 = table.twoHopTicket1(entry);
+			int ticket2 = table.twoHopTicket2(entry);
+			if ((held & (1 << ticket1)) == 0 || (held & (1 << ticket2)) == 0) continue;
+			if (ticket1 == ticket2 && (twice & (1 << ticket1)) == 0) continue;
+			int destination1 = graph.nodeAt(table.twoHopMiddle(entry));
+			int destination2 = graph.nodeAt(table.twoHopTarget(entry));
+			if (occupied(destination1) || occupied(destination2)) continue;
+			sink.doubleMove(pieceIds[MRX], location, ticket1, destination1, ticket2, destination2);
+		}
+	}
+
+	/**
+	 * @return how many moves {@link #generate(MoveSink)} pushes, without pushing them; assumes the
+	 * game is not over
+	 */
+	int countMoves() {
+		if ((remaining & (1 << MRX)) != 0) return countSingles(MRX) + countDoubles();
+		int count = 0;
+		for (int slot = 1; slot < players.length; slot++)
+			if ((remaining & (1 << slot)) != 0) count += countSingles(slot);
+		return count;
+	}
+
+	private int countSingles(int slot) {
+		int source = graph.indexOf(location(slot));
+		if (source < 0) return 0;
+		int held = heldMask(slot);
+		int count = 0;
+		for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++)
+			if (!occupied(graph.targetNode(e))) count += Integer.bitCount(usableTickets(e, held));
+		return count;
+	}
+
+	private int countDoubles() {
+		if (tickets(MRX, DOUBLE) == 0 || setup.moves.size() <= round + 1) return 0;
+		int source = graph.indexOf(location(MRX));
+		if (source < 0) return 0;
+		int held = heldMask(MRX);
+		MoveTable table = graph.moveTable();
+		int count = 0;
+		for (int entry = table.twoHopStart(source); entry < table.twoHopEnd(source); entry++) {
+			int ticket1 = table.twoHopTicket1(entry);
+			int ticket2 = table.twoHopTicket2(entry);
+			if ((held & (1 << ticket1)) == 0 || (held & (1 << ticket2)) == 0) continue;
+			if (ticket1 == ticket2 && tickets(MRX, ticket1) < 2) continue;
+			if (occupied(graph.nodeAt(table.twoHopMiddle(entry)))
+					|| occupied(graph.nodeAt(table.twoHopTarget(entry)))) continue;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @param slot the slot
+	 * @return whether the piece in the slot has a move, assuming the game is not over
+	 */
+	boolean hasAnyMove(int slot) {
+		return (moversMask() & (1 << slot)) != 0;
+	}
+
+	/**
+	 * @return the generated moves as a set, assuming the game is not over
+	 */
+	@Nonnull ImmutableSet<Move> availableMoves() {
+		ImmutableSet.Builder<Move> moves = ImmutableSet.builder();
+		generate(graph.moveTable().sink(moves::add));
+		return moves.build();
+	}
+
+	/**
+	 * @return the generated moves of the piece in the given slot as a set, assuming the game is not
+	 * over
+	 */
+	@Nonnull ImmutableSet<Move> availableMoves(int slot) {
+		ImmutableSet.Builder<Move> moves = ImmutableSet.builder();
+		generate(slot, graph.moveTable().sink(moves::add));
+		return moves.build();
+	}
+
+	private void generateSingles(int slot, MoveSink sink) {
+		int location = location(slot);
+		int source = graph.indexOf(location);
+		if (source < 0) return;
+		int held = heldMask(slot);
+		for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++) {
+			int usable = usableTickets(e, held);
+			int destination = graph.targetNode(e);
+			if (usable == 0 || occupied(destination)) continue;
+			for (; usable != 0; usable &= usable - 1)
+				sink.single(pieceIds[slot], location, Integer.numberOfTrailingZeros(usable), destination);
+		}
+	}
+
+	private boolean isLegalStep(int from, int ticket, int to, int held) {
+		if ((held & (1 << ticket)) == 0 || occupied(to)) return false;
+		int source = graph.indexOf(from);
+		if (source < 0) return false;
+		for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++)
+			if (graph.targetNode(e) == to) return (usableTickets(e, held) & (1 << ticket)) != 0;
+		return false;
+	}
+
+	/**
+	 * @return whether the given move is one of the generated moves, without generating them;
+	 * assumes the game is not over
+	 */
+	boolean isLegal(Move move) {
+		if (move == null) return false;
+		int slot = slotOf(move.commencedBy());
+		if (slot < 0 || (remaining & (1 << slot)) == 0) return false;
+		if (move.source() != location(slot)) return false;
+		int held = heldMask(slot);
+		// instanceof rather than a visitor so that search loops don't allocate one per call
+		if (move instanceof Move.SingleMove) {
+			Move.SingleMove m = (Move.SingleMove) move;
+			return isLegalStep(m.source(), m.ticket.ordinal(), m.destination, held);
+		}
+		if (!(move instanceof Move.DoubleMove)) return false;
+		Move.DoubleMove m = (Move.DoubleMove) move;
+		int ticket1 = m.ticket1.ordinal();
+		int ticket2 = m.ticket2.ordinal();
+		return slot == MRX
+				&& (held & (1 << DOUBLE)) != 0
+				&& setup.moves.size() > round + 1
+				&& (ticket1 != ticket2 || tickets(slot, ticket1) > 1)
+				&& isLegalStep(m.source(), ticket1, m.destination1, held)
+				&& isLegalStep(m.destination1, ticket2, m.destination2, held);
+	}
+
+	/**
+	 * Plays the given move without checking it, see {@link #isLegal(Move)}
+	 */
+	void play(Move move) {
+		if (move instanceof Move.SingleMove) {
+			Move.SingleMove m = (Move.SingleMove) move;
+			playSingle(slotOf(m.commencedBy()), m.ticket.ordinal(), m.destination);
+		} else {
+			Move.DoubleMove m = (Move.DoubleMove) move;
+			playDouble(m.ticket1.ordinal(), m.destination1, m.ticket2.ordinal(), m.destination2);
+		}
+	}
+
+	// the key of everything a move by the given slot can change
+	private long changingKey(int slot) {
+		long changing = keyOf(MRX) ^ Zobrist.round(round);
+		for (int other = 0; other < players.length; other++)
+			if ((remaining & (1 << other)) != 0) changing ^= Zobrist.toMove(pieceIds[other]);
+		return slot == MRX ? changing : changing ^ keyOf(slot);
+	}
+
+	private long keyOf(int slot) {
+		long word = Zobrist.location(pieceIds[slot], location(slot));
+		for (int t = 0; t <= SECRET; t++) word ^= Zobrist.tickets(pieceIds[slot], t, tickets(slot, t));
+		return word;
+	}
+
+	/**
+	 * @return the key of this position with the detectives' colours left out, see
+	 * {@link Board.GameState#canonicalKey()}
+	 */
+	long canonicalKey() {
+		long canonical = Zobrist.round(round) ^ keyOf(MRX);
+		if ((remaining & (1 << MRX)) != 0) canonical ^= Zobrist.toMove(pieceIds[MRX]);
+		for (int slot = 1; slot < players.length; slot++) {
+			long detective = Zobrist.location(Zobrist.ANY_DETECTIVE, location(slot));
+			for (int t = 0; t <= SECRET; t++)
+				detective ^= Zobrist.tickets(Zobrist.ANY_DETECTIVE, t, tickets(slot, t));
+			if ((remaining & (1 << slot)) != 0) detective ^= Zobrist.toMove(Zobrist.ANY_DETECTIVE);
+			canonical ^= Zobrist.fold(detective);
+		}
+		return canonical;
+	}
+
+	/**
+	 * @return the detectives in the order {@link #canonicalKey()} leaves them in, see
+	 * {@link Board.GameState#canonicalDetectives()}
+	 */
+	@Nonnull ImmutableList<Piece.Detective> canonicalDetectives() {
+		int[] slots = new int[players.length - 1];
+		for (int slot = 1; slot < players.length; slot++) { // insertion sort by location, at most five
+			int i = slot - 1;
+			while (i > 0 && location(slots[i - 1]) > location(slot)) {
+				slots[i] = slots[i - 1];
+				i--;
+			}
+			slots[i] = slot;
+		}
+		ImmutableList.Builder<Piece.Detective> detectives = ImmutableList.builder();
+		for (int slot : slots) detectives.add((Piece.Detective) pieces[slot]);
+		return detectives.build();
+	}
+
+	private long fullKey() {
+		long full = Zobrist.round(round);
+		for (int slot = 0; slot < players.length; slot++) {
+			full ^= keyOf(slot);
+			if ((remaining & (1 << slot)) != 0) full ^= Zobrist.toMove(pieceIds[slot]);
+		}
+		return full;
+	}
+
+	void playSingle(int slot, int ticket, int destination) {
+		key ^= changingKey(slot);
+		moveSingle(slot, ticket, destination);
+		key ^= changingKey(slot);
+	}
+
+	private void moveSingle(int slot, int ticket, int destination) {
+		if (slot == MRX) {
+			addTickets(MRX, ticket, -1);
+			moveTo(MRX, destination);
+			append(ticket, destination);
+			remaining = detectiveMask();
+			return;
+		}
+		int from = location(slot);
+		addTickets(slot, ticket, -1);
+		addTickets(MRX, ticket, 1);
+		moveTo(slot, destination);
+		// only the detective that moved and its old and new neighbours can have gained or lost a move
+		for (int other = 1; other < players.length; other++) {
+			if (other != slot && !isNextTo(other, from) && !isNextTo(other, destination)) continue;
+			if (hasSingleMove(other)) movable |= 1 << other;
+			else movable &= ~(1 << other);
+		}
+		remaining &= ~(1 << slot);
+		if ((remaining & movable) == 0) remaining = 1 << MRX;
+	}
+
+	private boolean isNextTo(int slot, int location) {
+		int source = graph.indexOf(location(slot));
+		return source >= 0 && graph.edgeTo(source, location) >= 0;
+	}
+
+	void playDouble(int ticket1, int destination1, int ticket2, int destination2) {
+		key ^= changingKey(MRX);
+		addTickets(MRX, ticket1, -1);
+		addTickets(MRX, ticket2, -1);
+		addTickets(MRX, DOUBLE, -1);
+		moveTo(MRX, destination2);
+		append(ticket1, destination1);
+		append(ticket2, destination2);
+		remaining = detectiveMask();
+		key ^= changingKey(MRX);
+	}
+
+	private int detectiveMask() { return ((1 << players.length) - 1) & ~(1 << MRX); }
+
+	private void append(int ticket, int location) {
+		if (logShared) {
+			log = log.clone();
+			logShared = false;
+		}
+		log[round] = setup.moves.get(round)
+				? ticket | LOG_REVEAL | location << LOG_LOCATION_SHIFT
+				: ticket;
+		round++;
+	}
+
+	@Nonnull ImmutableList<LogEntry> travelLog() {
+		ImmutableList.Builder<LogEntry> builder = ImmutableList.builderWithExpectedSize(round);
+		for (int i = 0; i < round; i++) {
+			Ticket ticket = CompiledGraph.ticket(log[i] & LOG_TICKET_MASK);
+			builder.add((log[i] & LOG_REVEAL) != 0
+					? LogEntry.reveal(ticket, log[i] >>> LOG_LOCATION_SHIFT)
+					: LogEntry.hidden(ticket));
+		}
+		return builder.build();
+	}
+
+	@Override public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (int slot = 0; slot < pieces.length; slot++) {
+			builder.append(Objects.toString(pieces[slot])).append('@').append(location(slot));
+			if ((remaining & (1 << slot)) != 0) builder.append('*');
+			builder.append(' ');
+		}
+		return builder.append("round ").append(round).toString();
+	}
+}
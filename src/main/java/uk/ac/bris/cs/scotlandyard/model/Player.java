@@ -2,7 +2,7 @@ package uk.ac.bris.cs.scotlandyard.model;
 
 import com.google.common.collect.ImmutableMap;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Objects;
 
 import javax.annotation.Nonnull;
@@ -12,11 +12,20 @@ import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
 /**
  * A POJO representing an immutable player of the ScotlandYard game.
  * Each player contains the {@link Piece} (coloured counter), {@link Ticket}s, and the location.
+ * <br>
+ * Ticket counts are kept in an array indexed by {@link Ticket#ordinal()}, so reading a count or
+ * deriving a player with a different count does not box or copy a map. The {@link #tickets()} map
+ * is only built when asked for.
  */
 public final class Player {
+	private static final Ticket[] TICKETS = Ticket.values();
+
 	private final Piece piece;
-	private final ImmutableMap<Ticket, Integer> tickets;
+	private final int[] counts;  // ticket ordinal -> count, never written after construction
+	private final int present;   // ticket ordinals that are keys of the ticket map, even with a count of 0
+	private final int held;      // ticket ordinals with a non-zero count
 	private final int location;
+	private volatile ImmutableMap<Ticket, Integer> tickets; // built on first use when not given
 
 	public Player(@Nonnull Piece piece,
 	              @Nonnull ImmutableMap<Ticket, Integer> tickets,
@@ -24,6 +33,31 @@ public final class Player {
 		this.piece = Objects.requireNonNull(piece);
 		this.tickets = Objects.requireNonNull(tickets);
 		this.location = location;
+		this.counts = new int[TICKETS.length];
+		int present = 0;
+		for (var entry : tickets.entrySet()) {
+			counts[entry.getKey().ordinal()] = entry.getValue();
+			present |= 1 << entry.getKey().ordinal();
+		}
+		this.present = present;
+		this.held = heldOf(counts);
+	}
+
+	private Player(Piece piece, int[] counts, int present, int location,
+	               ImmutableMap<Ticket, Integer> tickets) {
+		this.piece = piece;
+		this.counts = counts;
+		this.present = present;
+		this.held = heldOf(counts);
+		this.location = location;
+		this.tickets = tickets;
+	}
+
+	private static int heldOf(int[] counts) {
+		int held = 0;
+		for (int t = 0; t < counts.length; t++)
+			if (counts[t] != 0) held |= 1 << t;
+		return held;
 	}
 	/**
 	 * @return the piece
@@ -40,7 +74,26 @@ public final class Player {
 	/**
 	 * @return the ticket
 	 */
-	@Nonnull public ImmutableMap<Ticket, Integer> tickets() { return tickets; }
+	@Nonnull public ImmutableMap<Ticket, Integer> tickets() {
+		ImmutableMap<Ticket, Integer> tickets = this.tickets;
+		if (tickets == null) {
+			ImmutableMap.Builder<Ticket, Integer> builder = ImmutableMap.builder();
+			for (Ticket t : TICKETS)
+				if ((present & (1 << t.ordinal())) != 0) builder.put(t, counts[t.ordinal()]);
+			this.tickets = tickets = builder.build();
+		}
+		return tickets;
+	}
+	/**
+	 * @param ticket the ticket
+	 * @return how many of the given ticket the player has
+	 */
+	public int count(@Nonnull Ticket ticket) { return counts[ticket.ordinal()]; }
+	/**
+	 * @return the tickets the player has at least one of, as a bitmask of
+	 * {@link Ticket#ordinal()}s
+	 */
+	public int heldMask() { return held; }
 	/**
 	 * @return the location
 	 */
@@ -50,7 +103,7 @@ public final class Player {
 	 * @return whether the player has the given ticket
 	 */
 	public boolean has(@Nonnull Ticket ticket) {
-		return tickets.getOrDefault(Objects.requireNonNull(ticket), 0) != 0;
+		return (held & (1 << ticket.ordinal())) != 0;
 	}
 	/**
 	 * @param ticket the ticket
@@ -58,7 +111,7 @@ public final class Player {
 	 * @return whether the player has &gt;= the required numbers of the given ticket
 	 */
 	public boolean hasAtLeast(@Nonnull Ticket ticket, int count) {
-		return tickets.getOrDefault(Objects.requireNonNull(ticket), 0) >= count;
+		return counts[ticket.ordinal()] >= count;
 	}
 	/**
 	 * See {@link #give(Ticket)}
@@ -76,9 +129,8 @@ public final class Player {
 	 * @return a new player with one more of the given ticket
 	 */
 	@Nonnull public Player give(@Nonnull Ticket ticket) {
-		var map = new HashMap<>(tickets);
-		map.computeIfPresent(ticket, (t, n) -> n + 1);
-		return new Player(piece, ImmutableMap.copyOf(map), location);
+		if ((present & (1 << ticket.ordinal())) == 0) return this; // only tickets already on the board can be given
+		return adjust(ticket, 1);
 	}
 	/**
 	 * See {@link #use(Ticket)}
@@ -98,22 +150,35 @@ public final class Player {
 	@Nonnull public Player use(@Nonnull Ticket ticket) {
 		if (!has(ticket))
 			throw new IllegalArgumentException("No " + ticket + " remaining");
-		var map = new HashMap<>(tickets);
-		map.computeIfPresent(ticket, (t, n) -> n - 1);
-		return new Player(piece, ImmutableMap.copyOf(map), location);
+		return adjust(ticket, -1);
+	}
+	/**
+	 * @param ticket the ticket
+	 * @param delta how many to add, negative to take away
+	 * @return a new player with the count of the given ticket changed by the delta; the ticket is
+	 * added to {@link #tickets()} if it was not there
+	 */
+	@Nonnull public Player adjust(@Nonnull Ticket ticket, int delta) {
+		int[] adjusted = counts.clone();
+		adjusted[ticket.ordinal()] += delta;
+		return new Player(piece, adjusted, present | 1 << ticket.ordinal(), location, null);
 	}
 	/**
 	 * @param newLocation the location
 	 * @return a new player at the given location
 	 */
-	@Nonnull public Player at(int newLocation) { return new Player(piece, tickets, newLocation); }
+	@Nonnull public Player at(int newLocation) {
+		return new Player(piece, counts, present, newLocation, tickets);
+	}
 	@Override public boolean equals(Object o) {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
 		Player that = (Player) o;
 		return location == that.location && piece == that.piece &&
-				Objects.equals(tickets, that.tickets);
+				present == that.present && Arrays.equals(counts, that.counts);
+	}
+	@Override public int hashCode() { // the fields equals compares, so the ticket map is not built
+		return ((piece.hashCode() * 31 + Arrays.hashCode(counts)) * 31 + present) * 31 + location;
 	}
-	@Override public int hashCode() { return Objects.hash(piece, tickets, location); }
-	@Override public String toString() { return piece + "@" + location + "(" + tickets + ")"; }
+	@Override public String toString() { return piece + "@" + location + "(" + tickets() + ")"; }
 }
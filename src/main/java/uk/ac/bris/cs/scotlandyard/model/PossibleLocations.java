@@ -0,0 +1,262 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * The nodes MrX could be on after each entry of the travel log, as the detectives see it.
+ * <br>
+ * Every round keeps one bit per node of the {@link CompiledGraph}, four {@code long}s for the
+ * 199 nodes of the standard map. {@link #push(LogEntry)} derives the next round from the last in
+ * one pass over the edges leaving its nodes: a reveal narrows it to the revealed node, a hidden
+ * entry spreads it along the edges that accept the logged ticket. {@link Ticket#SECRET} is
+ * accepted on every edge, ferries included, and a double move is logged as two entries so needs
+ * nothing special. {@link #exclude(int)} takes out nodes detectives stand on and is kept with the
+ * round, so working a round out again still leaves them out. {@link #pop()} takes back the last
+ * round, so a search can follow hypothetical log entries on one instance.
+ * <br>
+ * If a hidden entry rules out every node, which happens when MrX started off the assumed start
+ * nodes, every round is worked out again as if MrX could have started anywhere.
+ * <br>
+ * Instances are not thread safe; use {@link #copy()} to give each thread its own.
+ */
+public final class PossibleLocations {
+
+	private static final int SECRET = Ticket.SECRET.ordinal();
+	private static final int HIDDEN = -1;
+
+	private final CompiledGraph graph;
+	private final int words;       // longs per round
+	private long[] sets;           // round * words -> node index bits, round 0 holds the start nodes
+	private long[] excluded;       // round * words -> node index bits ruled out by exclude
+	private int[] tickets;         // round - 1 -> ticket ordinal of the log entry
+	private int[] reveals;         // round - 1 -> revealed node index, HIDDEN if hidden
+	private int rounds;
+	private boolean anywhere;      // whether round 0 holds every node
+
+	private PossibleLocations(CompiledGraph graph, long[] sets, long[] excluded, int[] tickets,
+	                          int[] reveals, int rounds, boolean anywhere) {
+		this.graph = graph;
+		this.words = (graph.nodeCount() + 63) >>> 6;
+		this.sets = sets;
+		this.excluded = excluded;
+		this.tickets = tickets;
+		this.reveals = reveals;
+		this.rounds = rounds;
+		this.anywhere = anywhere;
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @param starts the nodes MrX could have started on
+	 * @throws IllegalArgumentException if a start node is not in the graph
+	 */
+	public PossibleLocations(@Nonnull GameSetup setup, @Nonnull Collection<Integer> starts) {
+		this(setup.compiledGraph(), null, null, new int[16], new int[16], 0, false);
+		this.sets = new long[words * 17];
+		this.excluded = new long[sets.length];
+		for (int node : starts) {
+			int index = graph.indexOf(node);
+			if (index < 0) throw new IllegalArgumentException("Start " + node + " is not in the graph");
+			sets[index >>> 6] |= 1L << index;
+		}
+		if (size(0) == graph.nodeCount()) anywhere = true;
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @return the possible locations before MrX's first move, which are
+	 * {@link ScotlandYard#MRX_LOCATIONS} if all of them are on the graph and every node otherwise
+	 */
+	@Nonnull public static PossibleLocations of(@Nonnull GameSetup setup) {
+		Set<Integer> nodes = setup.graph.nodes();
+		return new PossibleLocations(setup, nodes.containsAll(ScotlandYard.MRX_LOCATIONS)
+				? ScotlandYard.MRX_LOCATIONS
+				: nodes);
+	}
+
+	/**
+	 * @return an independent copy of these locations
+	 */
+	@Nonnull public PossibleLocations copy() {
+		return new PossibleLocations(graph, sets.clone(), excluded.clone(), tickets.clone(),
+				reveals.clone(), rounds, anywhere);
+	}
+
+	/**
+	 * @return the number of log entries pushed
+	 */
+	public int rounds() { return rounds; }
+
+	/**
+	 * Catches up with the board: pushes the entries of its travel log that were not pushed yet,
+	 * then excludes the nodes its detectives stand on from the last round
+	 *
+	 * @param board the board of the game these locations follow
+	 * @throws IllegalArgumentException if the board's log is shorter than the rounds pushed
+	 */
+	public void update(@Nonnull Board board) {
+		ImmutableList<LogEntry> log = board.getMrXTravelLog();
+		if (log.size() < rounds)
+			throw new IllegalArgumentException("Log has " + log.size() + " entries, " + rounds + " pushed");
+		for (int round = rounds; round < log.size(); round++) push(log.get(round));
+		for (Piece piece : board.getPlayers())
+			if (piece.isDetective()) board.getDetectiveLocation((Detective) piece).ifPresent(this::exclude);
+	}
+
+	/**
+	 * Adds the round after the given log entry
+	 *
+	 * @param entry the log entry
+	 */
+	public void push(@Nonnull LogEntry entry) {
+		push(entry.ticket(), entry.location().orElse(HIDDEN));
+	}
+
+	/**
+	 * Adds the round after a log entry
+	 *
+	 * @param ticket the ticket MrX used
+	 * @param revealed the node MrX was revealed on; -1 if hidden
+	 * @throws IllegalArgumentException if the revealed node is not in the graph
+	 */
+	public void push(@Nonnull Ticket ticket, int revealed) {
+		int reveal = HIDDEN;
+		if (revealed != HIDDEN) {
+			reveal = graph.indexOf(revealed);
+			if (reveal < 0) throw new IllegalArgumentException("Reveal " + revealed + " is not in the graph");
+		}
+		if (rounds == tickets.length) {
+			tickets = Arrays.copyOf(tickets, rounds * 2);
+			reveals = Arrays.copyOf(reveals, rounds * 2);
+		}
+		if ((rounds + 2) * words > sets.length) {
+			sets = Arrays.copyOf(sets, sets.length * 2);
+			excluded = Arrays.copyOf(excluded, sets.length);
+		}
+		tickets[rounds] = ticket.ordinal();
+		reveals[rounds] = reveal;
+		rounds++;
+		step(rounds);
+		if (reveal == HIDDEN && !anywhere && size(rounds) == 0) startAnywhere();
+	}
+
+	/**
+	 * Takes back the last round added by {@link #push(LogEntry)}
+	 *
+	 * @throws IllegalStateException if no round was pushed
+	 */
+	public void pop() {
+		if (rounds == 0) throw new IllegalStateException("Nothing to pop");
+		Arrays.fill(excluded, rounds * words, (rounds + 1) * words, 0);
+		rounds--;
+	}
+
+	/**
+	 * Rules out the given node for the last round, for a node a detective stands on
+	 *
+	 * @param node the node
+	 */
+	public void exclude(int node) {
+		int index = graph.indexOf(node);
+		if (index < 0) return;
+		excluded[rounds * words + (index >>> 6)] |= 1L << index;
+		sets[rounds * words + (index >>> 6)] &= ~(1L << index);
+	}
+
+	/**
+	 * @param node the node
+	 * @return whether MrX could be on the node now
+	 */
+	public boolean contains(int node) { return contains(rounds, node); }
+
+	/**
+	 * @param round the number of log entries, from 0 to {@link #rounds()}
+	 * @param node the node
+	 * @return whether MrX could have been on the node after that many log entries
+	 */
+	public boolean contains(int round, int node) {
+		checkRound(round);
+		int index = graph.indexOf(node);
+		return index >= 0 && (sets[round * words + (index >>> 6)] & (1L << index)) != 0;
+	}
+
+	/**
+	 * @return the number of nodes MrX could be on now
+	 */
+	public int size() { return size(rounds); }
+
+	/**
+	 * @param round the number of log entries, from 0 to {@link #rounds()}
+	 * @return the number of nodes MrX could have been on after that many log entries
+	 */
+	public int size(int round) {
+		checkRound(round);
+		int size = 0;
+		for (int w = round * words; w < (round + 1) * words; w++) size += Long.bitCount(sets[w]);
+		return size;
+	}
+
+	/**
+	 * @return the nodes MrX could be on now, in ascending order
+	 */
+	@Nonnull public int[] toArray() {
+		int[] nodes = new int[size()];
+		int count = 0;
+		for (int w = 0; w < words; w++)
+			for (long bits = sets[rounds * words + w]; bits != 0; bits &= bits - 1)
+				nodes[count++] = graph.nodeAt(w << 6 | Long.numberOfTrailingZeros(bits));
+		return nodes;
+	}
+
+	/**
+	 * @return the nodes MrX could be on now
+	 */
+	@Nonnull public ImmutableSet<Integer> locations() {
+		return Arrays.stream(toArray()).boxed().collect(ImmutableSet.toImmutableSet());
+	}
+
+	private void checkRound(int round) {
+		if (round < 0 || round > rounds)
+			throw new IllegalArgumentException("Round " + round + " not in 0.." + rounds);
+	}
+
+	// fills the given round from the one before it, less the nodes excluded from it
+	private void step(int round) {
+		int to = round * words;
+		int from = to - words;
+		Arrays.fill(sets, to, to + words, 0);
+		int reveal = reveals[round - 1];
+		if (reveal != HIDDEN) sets[to + (reveal >>> 6)] |= 1L << reveal;
+		else {
+			int ticket = 1 << tickets[round - 1];
+			boolean anyEdge = tickets[round - 1] == SECRET;
+			for (int w = 0; w < words; w++)
+				for (long bits = sets[from + w]; bits != 0; bits &= bits - 1) {
+					int index = w << 6 | Long.numberOfTrailingZeros(bits);
+					for (int e = graph.edgeStart(index); e < graph.edgeEnd(index); e++)
+						if (anyEdge || (graph.tickets(e) & ticket) != 0) {
+							int target = graph.target(e);
+							sets[to + (target >>> 6)] |= 1L << target;
+						}
+				}
+		}
+		for (int w = to; w < to + words; w++) sets[w] &= ~excluded[w];
+	}
+
+	private void startAnywhere() {
+		anywhere = true;
+		for (int index = 0; index < graph.nodeCount(); index++) sets[index >>> 6] |= 1L << index;
+		for (int w = 0; w < words; w++) sets[w] &= ~excluded[w];
+		for (int round = 1; round <= rounds; round++) step(round);
+	}
+}
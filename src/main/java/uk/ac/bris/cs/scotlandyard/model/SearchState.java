@@ -0,0 +1,236 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A mutable game position for tree search, with the same rules as {@link MyGameStateFactory}.
+ * <br>
+ * Unlike {@link GameState#advance(Move)}, {@link #apply(Move)} changes this position in place and
+ * {@link #undo()} takes the last move back, so a depth-first search can walk the whole tree with a
+ * single instance. The undo history is a growable {@code long[]}; once it is large enough for the
+ * search depth, applying and undoing moves does not allocate.
+ * <br>
+ * Instances are not thread safe; use {@link #copy()} to give each thread its own.
+ */
+public final class SearchState {
+
+	private final PackedPosition position;
+	private final int frame; // longs per undo entry: every player word, remaining, movable, round and key
+	private long[] history;
+	private int depth;
+
+	private SearchState(PackedPosition position) {
+		this.position = position;
+		this.frame = position.players.length + 4;
+		this.history = new long[frame * 16];
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @param mrX MrX player
+	 * @param detectives detective players
+	 * @return the search state at the start of a new game
+	 * @throws IllegalArgumentException if the game is invalid, see {@link MyGameStateFactory}
+	 */
+	@Nonnull public static SearchState of(GameSetup setup,
+	                                      Player mrX,
+	                                      ImmutableList<Player> detectives) {
+		return new SearchState(PackedPosition.initial(setup, mrX, detectives));
+	}
+
+	/**
+	 * @param state a game state from {@link MyGameStateFactory} or {@link PackedGameStateFactory}
+	 * @return a search state of the same position, including MrX's actual location
+	 * @throws IllegalArgumentException if the state is from another implementation
+	 */
+	@Nonnull public static SearchState of(GameState state) {
+		if (!(state instanceof PackedPosition.Source))
+			throw new IllegalArgumentException("Cannot snapshot " + state.getClass());
+		return new SearchState(((PackedPosition.Source) state).packedPosition().copy());
+	}
+
+	/**
+	 * Snapshots a board that is still in play using only what the board exposes, with MrX placed
+	 * at the given location. This is how a detective should start a search, since the real
+	 * location is hidden from them. A detective that is still to move this round but has no move
+	 * yet stays to move if the board is a game state from {@link MyGameStateFactory} or
+	 * {@link PackedGameStateFactory}; other boards do not say who is still to move.
+	 *
+	 * @param board the board
+	 * @param mrXLocation where MrX is assumed to be
+	 * @return a search state of the board's position
+	 * @throws IllegalArgumentException if the game on the board is already over
+	 */
+	@Nonnull public static SearchState of(Board board, int mrXLocation) {
+		if (!board.getWinner().isEmpty())
+			throw new IllegalArgumentException("Game is already over");
+		Player mrX = null;
+		List<Player> detectives = new ArrayList<>();
+		for (Piece piece : ScotlandYard.ALL_PIECES) {
+			if (!board.getPlayers().contains(piece)) continue;
+			Board.TicketBoard ticketBoard = board.getPlayerTickets(piece).orElseThrow();
+			ImmutableMap<Ticket, Integer> tickets = Arrays.stream(Ticket.values())
+					.collect(ImmutableMap.toImmutableMap(t -> t, ticketBoard::getCount));
+			if (piece.isMrX()) mrX = new Player(piece, tickets, mrXLocation);
+			else detectives.add(new Player(piece, tickets,
+					board.getDetectiveLocation((Detective) piece).orElseThrow()));
+		}
+		if (mrX == null) throw new IllegalArgumentException("No MrX on board");
+		return new SearchState(PackedPosition.resume(board.getSetup(), mrX, detectives,
+				PackedPosition.remaining(board), board.getMrXTravelLog()));
+	}
+
+	/**
+	 * @return an independent copy of this position, without the undo history
+	 */
+	@Nonnull public SearchState copy() { return new SearchState(position.copy()); }
+
+	/**
+	 * @return the game setup
+	 */
+	@Nonnull public GameSetup getSetup() { return position.setup; }
+	/**
+	 * @return all players in the game, MrX first
+	 */
+	@Nonnull public ImmutableList<Piece> getPlayers() { return ImmutableList.copyOf(position.pieces); }
+	/**
+	 * @param piece the piece
+	 * @return the location of the given piece; -1 if the piece is not part of the game
+	 */
+	public int location(Piece piece) {
+		int slot = position.slotOf(piece);
+		return slot < 0 ? -1 : position.location(slot);
+	}
+	/**
+	 * @param piece the piece
+	 * @param ticket the ticket
+	 * @return how many of the given ticket the piece holds; 0 if the piece is not part of the game
+	 */
+	public int tickets(Piece piece, Ticket ticket) {
+		int slot = position.slotOf(piece);
+		return slot < 0 ? 0 : position.tickets(slot, ticket.ordinal());
+	}
+	/**
+	 * @return the number of entries in MrX's travel log
+	 */
+	public int round() { return position.round; }
+	/**
+	 * @return MrX's travel log
+	 */
+	@Nonnull public ImmutableList<LogEntry> getMrXTravelLog() { return position.travelLog(); }
+	/**
+	 * @return the number of moves that can be undone
+	 */
+	public int depth() { return depth; }
+	/**
+	 * @return the Zobrist key of this position, the same as {@link GameState#zobristKey()} of the
+	 * equal game state
+	 */
+	public long zobristKey() { return position.key; }
+	/**
+	 * @return the key of this position with the detectives' colours left out, the same as
+	 * {@link GameState#canonicalKey()} of the equal game state; does not allocate
+	 */
+	public long canonicalKey() { return position.canonicalKey(); }
+	/**
+	 * @return the detectives sorted by location, the same as
+	 * {@link GameState#canonicalDetectives()} of the equal game state
+	 */
+	@Nonnull public ImmutableList<Detective> canonicalDetectives() {
+		return position.canonicalDetectives();
+	}
+	/**
+	 * @return whether the game is over; does not allocate
+	 */
+	public boolean isGameOver() { return position.winnerMask() != 0; }
+	/**
+	 * @return the winner, see {@link Board#getWinner()}
+	 */
+	@Nonnull public ImmutableSet<Piece> getWinner() {
+		return position.pieces(position.winnerMask());
+	}
+	/**
+	 * @return the available moves, see {@link Board#getAvailableMoves()}
+	 */
+	@Nonnull public ImmutableSet<Move> getAvailableMoves() {
+		return isGameOver() ? ImmutableSet.of() : position.availableMoves();
+	}
+
+	/**
+	 * @return the number of available moves; does not allocate
+	 */
+	public int countAvailableMoves() { return isGameOver() ? 0 : position.countMoves(); }
+	/**
+	 * @param piece the piece
+	 * @return whether the given piece has an available move; does not allocate
+	 */
+	public boolean hasAnyMove(Piece piece) {
+		int slot = position.slotOf(piece);
+		return slot >= 0 && !isGameOver() && position.hasAnyMove(slot);
+	}
+
+	/**
+	 * Pushes the available moves into the given sink without allocating, see
+	 * {@link GameState#generateMoves(MoveSink)}
+	 *
+	 * @param sink the sink
+	 */
+	public void generateMoves(MoveSink sink) {
+		if (!isGameOver()) position.generate(sink);
+	}
+
+	/**
+	 * Plays the given move on this position
+	 *
+	 * @param move the move, which must be one of {@link #getAvailableMoves()}
+	 * @throws IllegalArgumentException if the move is not available
+	 */
+	public void apply(Move move) {
+		if (isGameOver() || !position.isLegal(move))
+			throw new IllegalArgumentException("Illegal move: " + move);
+		push();
+		position.play(move);
+	}
+
+	/**
+	 * Takes back the last move made with {@link #apply(Move)}
+	 *
+	 * @throws IllegalStateException if there is nothing to undo
+	 */
+	public void undo() {
+		if (depth == 0) throw new IllegalStateException("Nothing to undo");
+		int base = --depth * frame;
+		long[] players = position.players;
+		System.arraycopy(history, base, players, 0, players.length);
+		position.remaining = (int) history[base + players.length];
+		position.movable = (int) history[base + players.length + 1];
+		position.round = (int) history[base + players.length + 2];
+		position.key = history[base + players.length + 3];
+	}
+
+	private void push() {
+		int base = depth * frame;
+		if (base + frame > history.length) history = Arrays.copyOf(history, history.length * 2);
+		long[] players = position.players;
+		System.arraycopy(players, 0, history, base, players.length);
+		history[base + players.length] = position.remaining;
+		history[base + players.length + 1] = position.movable;
+		history[base + players.length + 2] = position.round;
+		history[base + players.length + 3] = position.key;
+		depth++;
+	}
+
+	@Override public String toString() { return position.toString(); }
+}
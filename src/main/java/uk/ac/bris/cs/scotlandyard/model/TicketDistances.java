@@ -0,0 +1,193 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * The fewest rounds a detective needs to reach a node with the tickets it holds, which is more
+ * than the plain hop distance of {@link DistanceOracle} once bus or underground tickets run short.
+ * <br>
+ * Only {@link Ticket#TAXI}, {@link Ticket#BUS} and {@link Ticket#UNDERGROUND} tickets are spent,
+ * so ferries are never taken. The rounds to every node are worked out together by a breadth-first
+ * search over locations and remaining tickets, and kept per source and ticket bucket in a cache
+ * that evicts the least recently used entry when full. A bucket caps every count at
+ * {@link #BUCKET_CAP}, which leaves every answer of up to {@link #BUCKET_CAP} rounds exact and can
+ * only make longer ones longer. Instances are safe to share between threads.
+ */
+public final class TicketDistances {
+
+	/**
+	 * The rounds to a node that cannot be reached with the tickets held, or that is not in the graph
+	 */
+	public static final int UNREACHABLE = DistanceOracle.UNREACHABLE;
+	/**
+	 * The count every ticket is capped at before looking up the cache
+	 */
+	public static final int BUCKET_CAP = 15;
+	/**
+	 * The number of sources and ticket buckets cached by {@link #TicketDistances(GameSetup)}
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private static final int TAXI = Ticket.TAXI.ordinal();
+	private static final int BUS = Ticket.BUS.ordinal();
+	private static final int UNDERGROUND = Ticket.UNDERGROUND.ordinal();
+	private static final int SHIFT = 4; // bits per ticket count in a ticket vector or cache key
+	private static final int COUNT_MASK = (1 << SHIFT) - 1;
+
+	private final CompiledGraph graph;
+	private final DistanceOracle distances;
+	private final int nodeCount;
+	private final Map<Integer, byte[]> cache; // source index << 12 | ticket vector -> node index -> rounds, guarded by itself
+
+	/**
+	 * @param setup the game setup whose graph to search
+	 */
+	public TicketDistances(@Nonnull GameSetup setup) { this(setup, DEFAULT_CAPACITY); }
+
+	/**
+	 * @param setup the game setup whose graph to search
+	 * @param capacity how many sources and ticket buckets to keep the rounds of
+	 */
+	public TicketDistances(@Nonnull GameSetup setup, int capacity) {
+		if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+		this.graph = setup.compiledGraph();
+		this.distances = graph.distances();
+		this.nodeCount = graph.nodeCount();
+		this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @param detective the detective, read for its location and tickets
+	 * @param to the node to reach
+	 * @return the fewest rounds the detective needs to reach the node; {@link #UNREACHABLE} if its
+	 * tickets cannot take it there
+	 */
+	public int rounds(@Nonnull Player detective, int to) {
+		return rounds(detective.location(), detective.count(Ticket.TAXI), detective.count(Ticket.BUS),
+				detective.count(Ticket.UNDERGROUND), to);
+	}
+
+	/**
+	 * @param from the node to start from
+	 * @param taxi the taxi tickets held
+	 * @param bus the bus tickets held
+	 * @param underground the underground tickets held
+	 * @param to the node to reach
+	 * @return the fewest rounds needed to reach the node with the given tickets;
+	 * {@link #UNREACHABLE} if the tickets cannot take a detective there
+	 */
+	public int rounds(int from, int taxi, int bus, int underground, int to) {
+		if (taxi < 0 || bus < 0 || underground < 0)
+			throw new IllegalArgumentException("Negative ticket count");
+		int fromIndex = graph.indexOf(from);
+		int toIndex = graph.indexOf(to);
+		if (fromIndex < 0 || toIndex < 0) return UNREACHABLE;
+		return roundsFrom(fromIndex, Math.min(taxi, BUCKET_CAP), Math.min(bus, BUCKET_CAP),
+				Math.min(underground, BUCKET_CAP))[toIndex] & 0xFF;
+	}
+
+	/**
+	 * @param detectives the detectives
+	 * @param to the node to reach
+	 * @return the fewest rounds any of the detectives needs to reach the node;
+	 * {@link #UNREACHABLE} if none of them can
+	 */
+	public int nearest(@Nonnull Iterable<Player> detectives, int to) {
+		int nearest = UNREACHABLE;
+		for (Player detective : detectives) nearest = Math.min(nearest, rounds(detective, to));
+		return nearest;
+	}
+
+	private byte[] roundsFrom(int source, int taxi, int bus, int underground) {
+		Integer key = source << 3 * SHIFT | vector(taxi, bus, underground);
+		byte[] rounds;
+		synchronized (cache) {
+			rounds = cache.get(key);
+		}
+		if (rounds != null) return rounds;
+		rounds = search(source, taxi, bus, underground); // searched outside the lock, threads racing here get the same rounds
+		synchronized (cache) {
+			cache.put(key, rounds);
+		}
+		return rounds;
+	}
+
+	// breadth-first over (node, taxi, bus, underground) states, one layer per round; a state is
+	// dropped if an earlier one stood on the same node with at least as many of every ticket, and the
+	// search stops once every node detectives can reach from the source has its rounds
+	private byte[] search(int source, int taxi, int bus, int underground) {
+		byte[] rounds = new byte[nodeCount];
+		Arrays.fill(rounds, (byte) UNREACHABLE);
+		rounds[source] = 0;
+		int reachable = 0;
+		for (int index = 0; index < nodeCount; index++)
+			if (distances.detectiveDistanceByIndex(source, index) != UNREACHABLE) reachable++;
+		int[][] kept = new int[nodeCount][]; // node index -> ticket vectors it was reached with
+		int[] keptSize = new int[nodeCount];
+		int start = vector(taxi, bus, underground);
+		kept[source] = new int[]{start};
+		keptSize[source] = 1;
+		int[] frontier = {source, start};
+		int frontierSize = 2;
+		int[] next = new int[32];
+		int reached = 1;
+		for (int round = 1; frontierSize > 0 && reached < reachable; round++) {
+			int nextSize = 0;
+			for (int i = 0; i < frontierSize; i += 2) {
+				int index = frontier[i];
+				int vector = frontier[i + 1];
+				for (int e = graph.edgeStart(index); e < graph.edgeEnd(index); e++) {
+					int tickets = graph.tickets(e);
+					int target = graph.target(e);
+					for (int ticket = TAXI; ticket <= UNDERGROUND; ticket++) {
+						int shift = SHIFT * (UNDERGROUND - ticket);
+						if ((tickets & (1 << ticket)) == 0 || (vector >>> shift & COUNT_MASK) == 0) continue;
+						int spent = vector - (1 << shift);
+						if (dominated(kept[target], keptSize[target], spent)) continue;
+						if (kept[target] == null) kept[target] = new int[4];
+						else if (keptSize[target] == kept[target].length)
+							kept[target] = Arrays.copyOf(kept[target], keptSize[target] * 2);
+						kept[target][keptSize[target]++] = spent;
+						if (nextSize == next.length) next = Arrays.copyOf(next, nextSize * 2);
+						next[nextSize++] = target;
+						next[nextSize++] = spent;
+						if ((rounds[target] & 0xFF) == UNREACHABLE) {
+							rounds[target] = (byte) Math.min(round, UNREACHABLE - 1);
+							reached++;
+						}
+					}
+				}
+			}
+			int[] swap = frontier;
+			frontier = next;
+			frontierSize = nextSize;
+			next = swap;
+		}
+		return rounds;
+	}
+
+	private static int vector(int taxi, int bus, int underground) {
+		return taxi << 2 * SHIFT | bus << SHIFT | underground;
+	}
+
+	private static boolean dominated(int[] vectors, int size, int vector) {
+		for (int i = 0; i < size; i++) {
+			int other = vectors[i];
+			if ((other >>> 2 * SHIFT) >= (vector >>> 2 * SHIFT)
+					&& (other >>> SHIFT & COUNT_MASK) >= (vector >>> SHIFT & COUNT_MASK)
+					&& (other & COUNT_MASK) >= (vector & COUNT_MASK)) return true;
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,210 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Comparator;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * The 64-bit Zobrist keys that make up {@link Board.GameState#zobristKey()}.
+ * <br>
+ * A position's key is the XOR of one key for each piece's location, one for each non-zero ticket
+ * count of each piece, one for each piece still to move and one for the round. Making a move only
+ * XORs out the keys that no longer hold and XORs in the new ones. Keys are derived from the feature
+ * with the SplitMix64 finaliser rather than read from a random table, so any node number works and
+ * the same position has the same key in every run.
+ * <br>
+ * Pieces are given as their index in {@link ScotlandYard#ALL_PIECES} and tickets as their
+ * {@link Ticket#ordinal()}.
+ */
+public final class Zobrist {
+
+	private static final long LOCATION = 1;
+	private static final long TICKETS = 2;
+	private static final long TO_MOVE = 3;
+	private static final long ROUND = 4;
+
+	// piece index standing in for every detective when their colours do not matter
+	static final int ANY_DETECTIVE = ScotlandYard.ALL_PIECES.size();
+
+	private Zobrist() {}
+
+	// SplitMix64 finaliser: a bijection, so distinct features never share a key
+	private static long mix(long z) {
+		z += 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private static long feature(long kind, int piece, int ticket, int value) {
+		return mix(kind << 56 | (long) piece << 48 | (long) ticket << 40 | (value & 0xFFFFFFFFL));
+	}
+
+	/**
+	 * @param piece the index of the piece
+	 * @param location the location of the piece
+	 * @return the key of the piece standing at the location
+	 */
+	public static long location(int piece, int location) {
+		return feature(LOCATION, piece, 0, location);
+	}
+
+	/**
+	 * @param piece the index of the piece
+	 * @param ticket the ordinal of the ticket
+	 * @param count how many of the ticket the piece holds
+	 * @return the key of the piece holding that many of the ticket; 0 when the count is 0
+	 */
+	public static long tickets(int piece, int ticket, int count) {
+		return count == 0 ? 0 : feature(TICKETS, piece, ticket, count);
+	}
+
+	/**
+	 * @param piece the index of the piece
+	 * @return the key of the piece still having to move
+	 */
+	public static long toMove(int piece) { return feature(TO_MOVE, piece, 0, 0); }
+
+	/**
+	 * @param round the number of entries in MrX's travel log
+	 * @return the key of the round
+	 */
+	public static long round(int round) { return feature(ROUND, 0, 0, round); }
+
+	/**
+	 * @param player the player
+	 * @return the key of the player's location and tickets
+	 */
+	public static long player(@Nonnull Player player) {
+		int piece = ScotlandYard.ALL_PIECES.indexOf(player.piece());
+		long key = location(piece, player.location());
+		for (Ticket ticket : Ticket.values())
+			key ^= tickets(piece, ticket.ordinal(), player.count(ticket));
+		return key;
+	}
+
+	/**
+	 * The key of a detective without its colour, for {@link Board.GameState#canonicalKey()}. The
+	 * location, ticket and to-move keys are folded into one, so XORing the keys of several
+	 * detectives cannot pair one detective's location with another's tickets.
+	 *
+	 * @param player the detective
+	 * @param toMove whether the detective is still to move
+	 * @return the key of a detective of any colour in the same place with the same tickets
+	 */
+	public static long anyDetective(@Nonnull Player player, boolean toMove) {
+		long key = location(ANY_DETECTIVE, player.location());
+		for (Ticket ticket : Ticket.values())
+			key ^= tickets(ANY_DETECTIVE, ticket.ordinal(), player.count(ticket));
+		return fold(toMove ? key ^ toMove(ANY_DETECTIVE) : key);
+	}
+
+	// folds the keys of one colourless detective into one
+	static long fold(long key) { return mix(key); }
+
+	/**
+	 * @param pieces the pieces still to move
+	 * @return the key of exactly those pieces still having to move
+	 */
+	public static long toMove(@Nonnull Iterable<Piece> pieces) {
+		long key = 0;
+		for (Piece piece : pieces) key ^= toMove(ScotlandYard.ALL_PIECES.indexOf(piece));
+		return key;
+	}
+
+	/**
+	 * Computes a key from what a {@link Board} exposes. MrX's location is hidden from a board, so it
+	 * is left out and positions that only differ in where MrX is share a key.
+	 *
+	 * @param board the board
+	 * @return the key of the board's position without MrX's location
+	 */
+	public static long of(@Nonnull Board board) {
+		long key = round(board.getMrXTravelLog().size());
+		for (Piece piece : board.getPlayers()) {
+			int index = ScotlandYard.ALL_PIECES.indexOf(piece);
+			Board.TicketBoard tickets = board.getPlayerTickets(piece).orElseThrow();
+			for (Ticket ticket : Ticket.values())
+				key ^= tickets(index, ticket.ordinal(), tickets.getCount(ticket));
+			if (piece.isDetective())
+				key ^= location(index, board.getDetectiveLocation((Piece.Detective) piece).orElseThrow());
+		}
+		return key ^ toMove(PackedPosition.remaining(board));
+	}
+
+	/**
+	 * Computes a canonical key from what a {@link Board} exposes, see {@link #of(Board)} and
+	 * {@link Board.GameState#canonicalKey()}
+	 *
+	 * @param board the board
+	 * @return the key of the board's position without MrX's location or the detectives' colours
+	 */
+	public static long canonical(@Nonnull Board board) {
+		ImmutableSet<Piece> toMove = PackedPosition.remaining(board);
+		long key = round(board.getMrXTravelLog().size());
+		for (Piece piece : board.getPlayers()) {
+			Board.TicketBoard tickets = board.getPlayerTickets(piece).orElseThrow();
+			if (piece.isMrX()) {
+				int index = ScotlandYard.ALL_PIECES.indexOf(piece);
+				for (Ticket ticket : Ticket.values())
+					key ^= tickets(index, ticket.ordinal(), tickets.getCount(ticket));
+				if (toMove.contains(piece)) key ^= toMove(index);
+				continue;
+			}
+			long detective = location(ANY_DETECTIVE,
+					board.getDetectiveLocation((Piece.Detective) piece).orElseThrow());
+			for (Ticket ticket : Ticket.values())
+				detective ^= tickets(ANY_DETECTIVE, ticket.ordinal(), tickets.getCount(ticket));
+			key ^= fold(toMove.contains(piece) ? detective ^ toMove(ANY_DETECTIVE) : detective);
+		}
+		return key;
+	}
+
+	/**
+	 * Works out the canonical order from what a {@link Board} exposes, see
+	 * {@link Board.GameState#canonicalDetectives()}
+	 *
+	 * @param board the board
+	 * @return the board's detectives sorted by location
+	 */
+	@Nonnull public static ImmutableList<Detective> canonicalDetectives(@Nonnull Board board) {
+		return board.getPlayers().stream()
+				.filter(Piece::isDetective)
+				.map(Detective.class::cast)
+				.sorted(Comparator.comparingInt(detective -> board.getDetectiveLocation(detective).orElseThrow()))
+				.collect(ImmutableList.toImmutableList());
+	}
+
+	/**
+	 * Carries a move stored for one position over to another with the same canonical key, so a
+	 * transposition table keyed by {@link Board.GameState#canonicalKey()} can hand back moves
+	 * that name the right detective
+	 *
+	 * @param move the stored move
+	 * @param from the canonical detectives of the position the move was stored for
+	 * @param to the canonical detectives of the position the move is wanted for
+	 * @return the same move made by the detective at the same index of {@code to}; MrX's moves
+	 * unchanged
+	 * @throws IllegalArgumentException if the move's detective is not in {@code from} or has no
+	 * counterpart in {@code to}
+	 */
+	@Nonnull public static Move recolour(@Nonnull Move move, @Nonnull List<Detective> from,
+	                                     @Nonnull List<Detective> to) {
+		if (move.commencedBy().isMrX()) return move;
+		int index = from.indexOf(move.commencedBy());
+		if (index < 0 || index >= to.size())
+			throw new IllegalArgumentException("No counterpart for " + move.commencedBy() + " in " + to);
+		Piece piece = to.get(index);
+		if (piece == move.commencedBy()) return move;
+		return move.accept(new Move.FunctionalVisitor<>(
+				m -> new Move.SingleMove(piece, m.source(), m.ticket, m.destination),
+				m -> new Move.DoubleMove(piece, m.source(), m.ticket1, m.destination1, m.ticket2, m.destination2)));
+	}
+}
@@ -278,15 +278,12 @@ class MapController implements Controller, GameControl {
 	}
 
 	void advanceModel(Model board) {
-		var moves = board.getCurrentBoard().getAvailableMoves();
-		var pieces = moves.stream().map(Move::commencedBy).collect(ImmutableSet.toImmutableSet());
-		if (moves.isEmpty())
+		var pieces = board.getCurrentBoard().getPiecesToMove();
+		if (pieces.isEmpty())
 			throw new AssertionError("Model returned empty moves, did it pass all tests?");
 
 
-		var mrX = moves.stream().map(Move::commencedBy)
-				.collect(ImmutableSet.toImmutableSet())
-				.equals(ImmutableSet.of(MRX));
+		var mrX = pieces.equals(ImmutableSet.of(MRX));
 
 		if (mrX) counters.get(MRX).animateVisibility(true);
 
@@ -15,7 +15,6 @@ import uk.ac.bris.cs.fxkit.BindFXML;
 import uk.ac.bris.cs.fxkit.Controller;
 import uk.ac.bris.cs.scotlandyard.model.Board;
 import uk.ac.bris.cs.scotlandyard.model.Model;
-import uk.ac.bris.cs.scotlandyard.model.Move;
 import uk.ac.bris.cs.scotlandyard.model.Piece;
 import uk.ac.bris.cs.scotlandyard.ui.GameControl;
 import uk.ac.bris.cs.scotlandyard.ui.model.ModelProperty;
@@ -47,9 +46,7 @@ import uk.ac.bris.cs.scotlandyard.ui.model.ModelProperty;
 		if (!board.getWinner().isEmpty()) {
 			status.setText("Game completed, winning player:" + board.getWinner());
 		} else {
-			var pending = board.getAvailableMoves().stream()
-					.map(Move::commencedBy)
-					.collect(ImmutableSet.toImmutableSet());
+			var pending = board.getPiecesToMove();
 			status.setText("Waiting for move: " + pending);
 		}
 	}
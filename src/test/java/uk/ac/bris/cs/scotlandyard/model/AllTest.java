@@ -15,6 +15,14 @@ import org.junit.runners.Suite;
 		GameStateDetectivesAvailableMovesTest.class,
 		GameStateMrXAvailableMovesTest.class,
 		GameStatePlayoutTest.class,
-		ModelObserverTest.class
+		ModelObserverTest.class,
+		CompiledGraphTest.class,
+		SearchStateTest.class,
+		MoveTableTest.class,
+		DistanceOracleTest.class,
+		TicketDistancesTest.class,
+		PossibleLocationsTest.class,
+		LocationBeliefTest.class,
+		ZobristKeyTest.class
 })
 public class AllTest {}
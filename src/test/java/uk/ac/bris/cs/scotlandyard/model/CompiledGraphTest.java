@@ -0,0 +1,71 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that the compiled graph mirrors the guava graph it was built from
+ */
+public class CompiledGraphTest {
+
+	@Test public void testStandardGraphMatchesSource() throws IOException {
+		ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph = ScotlandYard.readGraph(
+				Resources.toString(Resources.getResource("graph.txt"), StandardCharsets.UTF_8));
+		CompiledGraph compiled = CompiledGraph.compile(graph);
+		assertThat(compiled.nodeCount()).isEqualTo(graph.nodes().size());
+		assertThat(compiled.edgeCount()).isEqualTo(2 * graph.edges().size());
+		for (int node : graph.nodes()) {
+			int index = compiled.indexOf(node);
+			assertThat(compiled.nodeAt(index)).isEqualTo(node);
+			Set<Integer> adjacent = new HashSet<>();
+			for (int e = compiled.edgeStart(index); e < compiled.edgeEnd(index); e++) {
+				int target = compiled.targetNode(e);
+				adjacent.add(target);
+				assertThat(compiled.nodeAt(compiled.target(e))).isEqualTo(target);
+				Set<Transport> transports = new HashSet<>();
+				for (Transport t : Transport.values())
+					if ((compiled.transports(e) & (1 << t.ordinal())) != 0) transports.add(t);
+				assertThat(transports).isEqualTo(graph.edgeValue(node, target).orElseThrow());
+			}
+			assertThat(adjacent).isEqualTo(graph.adjacentNodes(node));
+		}
+	}
+
+	@Test public void testFerryRequiresSecretTicket() {
+		CompiledGraph compiled = CompiledGraph.compile(ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.FERRY, Transport.TAXI))
+				.build());
+		int e = compiled.edgeStart(compiled.indexOf(1));
+		assertThat(compiled.tickets(e))
+				.isEqualTo((1 << Ticket.SECRET.ordinal()) | (1 << Ticket.TAXI.ordinal()));
+	}
+
+	@Test public void testMissingNodeHasNoIndex() {
+		CompiledGraph compiled = CompiledGraph.compile(ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.addNode(100000)
+				.build());
+		assertThat(compiled.indexOf(3)).isEqualTo(-1);
+		assertThat(compiled.indexOf(-5)).isEqualTo(-1);
+		assertThat(compiled.nodeAt(compiled.indexOf(100000))).isEqualTo(100000);
+		assertThat(compiled.edgeStart(compiled.indexOf(100000)))
+				.isEqualTo(compiled.edgeEnd(compiled.indexOf(100000)));
+	}
+
+}
@@ -0,0 +1,87 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that the distance oracle agrees with a breadth-first search of the guava graph
+ */
+public class DistanceOracleTest {
+
+	private static Map<Integer, Integer> search(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                                            int source, Predicate<ImmutableSet<Transport>> usable) {
+		Map<Integer, Integer> distances = new HashMap<>();
+		distances.put(source, 0);
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+		queue.add(source);
+		while (!queue.isEmpty()) {
+			int node = queue.poll();
+			for (int adjacent : graph.adjacentNodes(node))
+				if (!distances.containsKey(adjacent)
+						&& usable.test(graph.edgeValue(node, adjacent).orElseThrow())) {
+					distances.put(adjacent, distances.get(node) + 1);
+					queue.add(adjacent);
+				}
+		}
+		return distances;
+	}
+
+	@Test public void testStandardGraphDistancesMatchSearch() throws IOException {
+		ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph = ScotlandYard.readGraph(
+				Resources.toString(Resources.getResource("graph.txt"), StandardCharsets.UTF_8));
+		DistanceOracle oracle = CompiledGraph.compile(graph).distances();
+		for (int source : graph.nodes()) {
+			Map<Integer, Integer> all = search(graph, source, transports -> true);
+			Map<Integer, Integer> detective = search(graph, source,
+					transports -> transports.stream().anyMatch(t -> t != Transport.FERRY));
+			Map<Integer, Integer> bus = search(graph, source, transports -> transports.contains(Transport.BUS));
+			for (int node : graph.nodes()) {
+				assertThat(oracle.distance(source, node))
+						.isEqualTo(all.getOrDefault(node, DistanceOracle.UNREACHABLE));
+				assertThat(oracle.detectiveDistance(source, node))
+						.isEqualTo(detective.getOrDefault(node, DistanceOracle.UNREACHABLE));
+				assertThat(oracle.distance(Transport.BUS, source, node))
+						.isEqualTo(bus.getOrDefault(node, DistanceOracle.UNREACHABLE));
+			}
+		}
+	}
+
+	@Test public void testFerryOnlyNodeIsUnreachableForDetectives() {
+		DistanceOracle oracle = CompiledGraph.compile(ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(2, 3, ImmutableSet.of(Transport.FERRY))
+				.build()).distances();
+		assertThat(oracle.distance(1, 3)).isEqualTo(2);
+		assertThat(oracle.detectiveDistance(1, 3)).isEqualTo(DistanceOracle.UNREACHABLE);
+		assertThat(oracle.distance(Transport.TAXI, 3, 1)).isEqualTo(DistanceOracle.UNREACHABLE);
+		assertThat(oracle.nearestDetective(2, new int[]{1, 3})).isEqualTo(1);
+		assertThat(oracle.nearestDetective(3, new int[]{1, 2})).isEqualTo(DistanceOracle.UNREACHABLE);
+	}
+
+	@Test public void testMissingNodeIsUnreachable() {
+		DistanceOracle oracle = CompiledGraph.compile(ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.build()).distances();
+		assertThat(oracle.distance(1, 7)).isEqualTo(DistanceOracle.UNREACHABLE);
+		assertThat(oracle.nearestDetective(7, new int[]{1})).isEqualTo(DistanceOracle.UNREACHABLE);
+		assertThat(oracle.nearestDetective(2, new int[]{})).isEqualTo(DistanceOracle.UNREACHABLE);
+	}
+
+}
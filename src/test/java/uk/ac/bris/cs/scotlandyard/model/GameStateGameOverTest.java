@@ -1,8 +1,12 @@
 package uk.ac.bris.cs.scotlandyard.model;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ValueGraphBuilder;
+
 import org.junit.Test;
 
 import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
@@ -10,6 +14,7 @@ import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
 import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
 import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
 import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24MOVES;
 import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
 import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
 
@@ -202,4 +207,25 @@ public class GameStateGameOverTest extends ParameterisedModelTestBase {
 		assertGameIsOver(state);
 		assertThat(state.getWinner()).containsExactlyInAnyOrder(BLUE, RED);
 	}
+
+	@Test public void testTurnPassesToMrXIfDetectiveIsBlockedByMoveBeforeIt() {
+		var setup = new GameSetup(ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(2, 3, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(2, 4, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(10, 11, ImmutableSet.of(Transport.TAXI))
+				.build(), STANDARD24MOVES);
+		var mrX = new Player(MRX, defaultMrXTickets(), 10);
+		var red = new Player(RED, defaultDetectiveTickets(), 3);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 1); // blue's only way out is 2
+
+		GameState state = gameStateFactory.build(setup, mrX, red, blue);
+		state = state.advance(taxi(MRX, 10, 11));
+		state = state.advance(taxi(RED, 3, 2));
+		// red now blocks blue, so it is MrX's turn even though blue has not moved
+
+		assertGameIsNotOver(state);
+		assertThat(state.getAvailableMoves()).allMatch(m -> m.commencedBy().isMrX());
+	}
 }
@@ -4,7 +4,17 @@ import com.google.common.collect.ImmutableSet;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
 import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -107,4 +117,162 @@ public class GameStateMoveTest extends ParameterisedModelTestBase {
 				.isInstanceOf(IllegalArgumentException.class);
 	}
 
+	@Test public void testAdvanceDoesNotChangePreviousState() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 35);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 50);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, blue)
+				.advance(taxi(MRX, 35, 22));
+		var moves = state.getAvailableMoves();
+		GameState next = state.advance(taxi(BLUE, 50, 37));
+		assertTicketCount(next, MRX, 4, 3, 3, 2, 5);
+		assertTicketCount(state, MRX, 3, 3, 3, 2, 5);
+		assertThat(state.getAvailableMoves()).isEqualTo(moves);
+	}
+
+	@Test public void testAvailableMovesAndWinnerAreComputedOnce() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 35);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 26);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, blue);
+		assertThat(state.getAvailableMoves()).isSameAs(state.getAvailableMoves());
+		assertThat(state.getWinner()).isSameAs(state.getWinner());
+	}
+
+	// seeded random games from starts that reach the awkward cases: detectives running out of
+	// tickets, a detective that can never move, turns part way through a round and the last round;
+	// the check runs on every state, the finished one included
+	private void checkEveryStateOfRandomGames(Consumer<GameState> check) {
+		List<GameState> starts = List.of(
+				gameStateFactory.build(standard24MoveSetup(),
+						new Player(MRX, defaultMrXTickets(), 106),
+						new Player(RED, defaultDetectiveTickets(), 91),
+						new Player(BLUE, defaultDetectiveTickets(), 94)),
+				gameStateFactory.build(standard24MoveSetup(), // detectives soon run out of tickets
+						new Player(MRX, defaultMrXTickets(), 35),
+						new Player(RED, makeTickets(2, 1, 0, 0, 0), 26),
+						new Player(GREEN, makeTickets(1, 1, 1, 0, 0), 29),
+						new Player(BLUE, makeTickets(1, 0, 0, 0, 0), 50)),
+				gameStateFactory.build(standard24MoveSetup(), // WHITE only holds underground tickets off the underground
+						new Player(MRX, makeTickets(1, 1, 1, 1, 1), 106),
+						new Player(RED, defaultDetectiveTickets(), 91),
+						new Player(WHITE, makeTickets(0, 0, 4, 0, 0), 29),
+						new Player(YELLOW, defaultDetectiveTickets(), 138)),
+				gameStateFactory.build(new GameSetup(standardGraph(), moves(false, true, false)),
+						new Player(MRX, defaultMrXTickets(), 45),
+						new Player(RED, defaultDetectiveTickets(), 26),
+						new Player(BLUE, defaultDetectiveTickets(), 94)));
+		Random random = new Random(42);
+		for (GameState start : starts) {
+			for (int game = 0; game < 3; game++) {
+				GameState state = start;
+				check.accept(state);
+				while (!state.getAvailableMoves().isEmpty()) {
+					var moves = state.getAvailableMoves().asList();
+					state = state.advance(moves.get(random.nextInt(moves.size())));
+					check.accept(state);
+				}
+			}
+		}
+	}
+
+	@Test public void testGeneratedMovesMatchAvailableMoves() {
+		checkEveryStateOfRandomGames(state -> {
+			List<Move> generated = new ArrayList<>();
+			state.generateMoves(MoveSink.of(generated::add));
+			assertThat(generated).doesNotHaveDuplicates();
+			assertThat(generated).containsExactlyInAnyOrderElementsOf(state.getAvailableMoves());
+		});
+	}
+
+	@Test public void testAdvanceAcceptsExactlyTheAvailableMoves() {
+		checkEveryStateOfRandomGames(state -> {
+			var available = state.getAvailableMoves();
+			Set<Integer> sources = new HashSet<>();
+			for (Move move : available) sources.add(move.source());
+			for (Piece piece : state.getPlayers())
+				if (piece.isDetective()) sources.add(state.getDetectiveLocation((Piece.Detective) piece).orElseThrow());
+			Set<Move> candidates = new LinkedHashSet<>(available);
+			for (int source : sources) {
+				for (int destination : standardGraph().adjacentNodes(source)) {
+					for (Ticket ticket : Ticket.values()) {
+						for (Piece piece : ScotlandYard.ALL_PIECES)
+							candidates.add(new Move.SingleMove(piece, source, ticket, destination));
+						for (int second : standardGraph().adjacentNodes(destination))
+							candidates.add(new Move.DoubleMove(MRX, source, ticket, destination, TAXI, second));
+					}
+				}
+			}
+			for (Move candidate : candidates) {
+				if (available.contains(candidate)) assertThat(state.advance(candidate)).isNotNull();
+				else assertThatThrownBy(() -> state.advance(candidate))
+						.isInstanceOf(IllegalArgumentException.class);
+			}
+		});
+	}
+
+	@Test public void testAvailableMovesPerPieceMatchAvailableMoves() {
+		checkEveryStateOfRandomGames(state -> {
+			for (Piece piece : ScotlandYard.ALL_PIECES) {
+				assertThat(state.getAvailableMoves(piece)).containsExactlyInAnyOrderElementsOf(
+						state.getAvailableMoves().stream()
+								.filter(m -> m.commencedBy() == piece)
+								.collect(ImmutableSet.toImmutableSet()));
+			}
+			assertThat(state.getPiecesToMove()).containsExactlyInAnyOrderElementsOf(
+					state.getAvailableMoves().stream()
+							.map(Move::commencedBy)
+							.collect(ImmutableSet.toImmutableSet()));
+		});
+	}
+
+	@Test public void testMoveGroupsHoldExactlyTheAvailableMoves() {
+		checkEveryStateOfRandomGames(state -> {
+			MoveGroups groups = MoveGroups.of(state);
+			List<Move> moves = new ArrayList<>();
+			for (int group = 0; group < groups.singleGroups(); group++) {
+				Piece piece = groups.singlePiece(group);
+				for (Ticket ticket : Ticket.values())
+					if ((groups.singleTickets(group) & (1 << ticket.ordinal())) != 0)
+						moves.add(new Move.SingleMove(piece, groups.source(piece), ticket,
+								groups.singleDestination(group)));
+			}
+			for (int group = 0; group < groups.doubleGroups(); group++) {
+				for (int pairs = groups.doubleTickets(group); pairs != 0; pairs &= pairs - 1) {
+					int pair = Integer.numberOfTrailingZeros(pairs);
+					moves.add(new Move.DoubleMove(MRX, groups.source(MRX),
+							Ticket.values()[MoveGroups.pairTicket1(pair)], groups.doubleMiddle(group),
+							Ticket.values()[MoveGroups.pairTicket2(pair)], groups.doubleDestination(group)));
+				}
+			}
+			assertThat(moves).doesNotHaveDuplicates();
+			assertThat(moves).containsExactlyInAnyOrderElementsOf(state.getAvailableMoves());
+			assertThat(groups.size()).isEqualTo(state.getAvailableMoves().size());
+		});
+	}
+
+	@Test public void testMoveCountsMatchAvailableMoves() {
+		checkEveryStateOfRandomGames(state -> {
+			assertThat(state.countAvailableMoves()).isEqualTo(state.getAvailableMoves().size());
+			for (Piece piece : ScotlandYard.ALL_PIECES)
+				assertThat(state.hasAnyMove(piece)).isEqualTo(!state.getAvailableMoves(piece).isEmpty());
+		});
+	}
+
+	@Test public void testAdvanceAllMatchesAdvance() {
+		checkEveryStateOfRandomGames(state -> {
+			var children = state.advanceAll();
+			var parallel = state.advanceAll(ForkJoinPool.commonPool());
+			assertThat(children.keySet()).containsExactlyElementsOf(state.getAvailableMoves());
+			assertThat(parallel.keySet()).containsExactlyElementsOf(state.getAvailableMoves());
+			for (Move available : state.getAvailableMoves()) {
+				GameState expected = state.advance(available);
+				for (GameState child : List.of(children.get(available), parallel.get(available))) {
+					assertThat(child.getAvailableMoves()).isEqualTo(expected.getAvailableMoves());
+					assertThat(child.getMrXTravelLog()).isEqualTo(expected.getMrXTravelLog());
+					assertThat(child.getWinner()).isEqualTo(expected.getWinner());
+					assertThat(child.zobristKey()).isEqualTo(expected.zobristKey());
+				}
+			}
+		});
+	}
+
 }
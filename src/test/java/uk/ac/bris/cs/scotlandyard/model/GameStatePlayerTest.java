@@ -256,4 +256,15 @@ public class GameStatePlayerTest extends ParameterisedModelTestBase {
 		assertThat(state.getMrXTravelLog()).containsExactly(LogEntry.hidden(TAXI));
 	}
 
+	@Test public void testPlayerWithAdjustedTicketsEqualsPlayerBuiltFromMap() {
+		var mrX = new Player(MRX, makeTickets(2, 1, 0, 1, 0), 45);
+		var adjusted = mrX.adjust(TAXI, -1).adjust(BUS, 2).use(DOUBLE).at(46);
+		var built = new Player(MRX, makeTickets(1, 3, 0, 0, 0), 46);
+		assertThat(adjusted).isEqualTo(built).hasSameHashCodeAs(built);
+		assertThat(adjusted.tickets()).isEqualTo(built.tickets());
+		assertThat(adjusted.count(BUS)).isEqualTo(3);
+		assertThat(adjusted.has(DOUBLE)).isFalse();
+		assertThat(mrX.count(TAXI)).isEqualTo(2);
+	}
+
 }
@@ -58,4 +58,23 @@ public class GameStatePlayoutTest extends ParameterisedModelTestBase {
 		assertThat(state.getWinner()).containsExactlyInAnyOrder(RED, GREEN, BLUE, WHITE, YELLOW);
 	}
 
-}
\ No newline at end of file
+
+	@Test public void testGameValidatingEveryStateMatchesTrustedGame() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 106);
+		var red = new Player(RED, defaultDetectiveTickets(), 91);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 94);
+		GameState trusted = gameStateFactory.build(standard24MoveSetup(), mrX, red, blue);
+		GameState validated = new MyGameStateFactory(true).build(standard24MoveSetup(), mrX, red, blue);
+		for (Move move : new Move[]{
+				x2(MRX, 106, TAXI, 105, BUS, 87),
+				taxi(RED, 91, 105),
+				bus(BLUE, 94, 77),
+				taxi(MRX, 87, 88),
+				bus(RED, 105, 87)}) {
+			trusted = trusted.advance(move);
+			validated = validated.advance(move);
+			assertThat(validated.getAvailableMoves()).isEqualTo(trusted.getAvailableMoves());
+			assertThat(validated.getMrXTravelLog()).isEqualTo(trusted.getMrXTravelLog());
+		}
+	}
+}
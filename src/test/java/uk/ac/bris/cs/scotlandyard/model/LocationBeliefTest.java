@@ -0,0 +1,154 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ValueGraphBuilder;
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.LocationBelief.Behaviour;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.makeTickets;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.UNDERGROUND;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests that the belief weighs MrX's possible locations by how likely the logged tickets were
+ */
+public class LocationBeliefTest {
+
+	// 1 -taxi- 2 -bus- 3 -ferry- 4, and 1 -bus- 5, so MrX could start anywhere
+	private static GameSetup lineSetup() {
+		return new GameSetup(ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(2, 3, ImmutableSet.of(Transport.BUS))
+				.putEdgeValue(3, 4, ImmutableSet.of(Transport.FERRY))
+				.putEdgeValue(1, 5, ImmutableSet.of(Transport.BUS))
+				.build(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	private static LocationBelief lineBelief() {
+		return new LocationBelief(lineSetup(), 4096, Behaviour.UNIFORM, 42);
+	}
+
+	@Test public void testHiddenEntryWeighsNodesByShareOfMovesUsingTicket() {
+		LocationBelief belief = lineBelief();
+		belief.push(LogEntry.hidden(BUS), ticket -> 1);
+		// bus is 1 of 2 moves from 5, 1 of 3 from 3 and 1 of 4 from 1 and 2, secret moves included
+		assertThat(belief.probability(1)).isCloseTo(6 / 16d, within(0.01));
+		assertThat(belief.probability(2)).isCloseTo(4 / 16d, within(0.01));
+		assertThat(belief.probability(3)).isCloseTo(3 / 16d, within(0.01));
+		assertThat(belief.probability(5)).isCloseTo(3 / 16d, within(0.01));
+		assertThat(belief.probability(4)).isZero();
+	}
+
+	@Test public void testTicketsNotHeldAreNotCounted() {
+		LocationBelief belief = lineBelief();
+		belief.push(LogEntry.hidden(BUS), ticket -> ticket == SECRET ? 0 : 1);
+		assertThat(belief.probability(1)).isCloseTo(1 / 3d, within(0.01));
+		assertThat(belief.probability(2)).isCloseTo(1 / 3d, within(0.01));
+		assertThat(belief.probability(3)).isCloseTo(1 / 6d, within(0.01));
+		assertThat(belief.probability(5)).isCloseTo(1 / 6d, within(0.01));
+	}
+
+	@Test public void testBehaviourShiftsWeightToFavouredMoves() {
+		LocationBelief belief = new LocationBelief(lineSetup(), 4096,
+				(source, ticket, destination) -> ticket == SECRET ? 0 : destination == 5 ? 3 : 1, 42);
+		belief.push(LogEntry.hidden(BUS), ticket -> 1);
+		// bus is 3 of 4 weight from 1, 1 of 2 from 2, and the only move from 3 and 5
+		assertThat(belief.probability(5)).isCloseTo(3 / 13d, within(0.01));
+		assertThat(belief.probability(3)).isCloseTo(2 / 13d, within(0.01));
+		assertThat(belief.distribution().values().stream().mapToDouble(Double::doubleValue).sum())
+				.isCloseTo(1, within(1e-9));
+	}
+
+	@Test public void testRevealAndExclude() {
+		LocationBelief belief = lineBelief();
+		belief.push(LogEntry.hidden(BUS), ticket -> 1);
+		belief.exclude(1);
+		assertThat(belief.probability(1)).isZero();
+		assertThat(belief.probability(2)).isCloseTo(0.4, within(0.01));
+		belief.push(LogEntry.reveal(BUS, 5), ticket -> 1);
+		assertThat(belief.distribution()).containsOnlyKeys(5);
+		assertThat(belief.sample(new SplittableRandom(1))).isEqualTo(5);
+	}
+
+	@Test public void testDoubleMoveCountsTicketsHeldBeforeIt() {
+		GameSetup setup = new GameSetup(ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(14, 1, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.BUS))
+				.putEdgeValue(1, 3, ImmutableSet.of(Transport.BUS))
+				.putEdgeValue(2, 4, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(2, 5, ImmutableSet.of(Transport.UNDERGROUND))
+				.putEdgeValue(3, 6, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(8, 12, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(12, 13, ImmutableSet.of(Transport.UNDERGROUND))
+				.putEdgeValue(10, 11, ImmutableSet.of(Transport.TAXI))
+				.build(), ImmutableList.of(true, false, false, false));
+		GameState state = new MyGameStateFactory().build(setup,
+				new Player(MRX, makeTickets(1, 1, 0, 1, 0), 14),
+				ImmutableList.of(new Player(RED, makeTickets(1, 0, 1, 0, 0), 8),
+						new Player(BLUE, makeTickets(2, 0, 0, 0, 0), 10)));
+		LocationBelief belief = new LocationBelief(setup, 4096, Behaviour.UNIFORM, 42);
+		state = state.advance(new Move.SingleMove(MRX, 14, TAXI, 1));
+		state = state.advance(new Move.SingleMove(RED, 8, TAXI, 12));
+		belief.update(state);
+		state = state.advance(new Move.SingleMove(BLUE, 10, TAXI, 11));
+		state = state.advance(new Move.DoubleMove(MRX, 1, BUS, 2, TAXI, 4));
+		state = state.advance(new Move.SingleMove(RED, 12, UNDERGROUND, 13));
+		belief.update(state);
+		// the underground ticket RED just handed over was not held during the double move, so
+		// taxi was the only move from 2 as from 3
+		assertThat(belief.probability(4)).isCloseTo(0.5, within(0.03));
+		assertThat(belief.probability(6)).isCloseTo(0.5, within(0.03));
+	}
+
+	@Test public void testSamplesAreAlwaysPossibleInRandomGames() throws IOException {
+		GameSetup setup = new GameSetup(ScotlandYard.readGraph(Resources.toString(
+				Resources.getResource("graph.txt"), StandardCharsets.UTF_8)),
+				ScotlandYard.STANDARD24MOVES);
+		Random random = new Random(42);
+		SplittableRandom sampling = new SplittableRandom(42);
+		for (int game = 0; game < 10; game++) {
+			int mrX = ScotlandYard.MRX_LOCATIONS.get(random.nextInt(ScotlandYard.MRX_LOCATIONS.size()));
+			GameState state = new MyGameStateFactory().build(setup,
+					new Player(MRX, defaultMrXTickets(), mrX),
+					ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 26),
+							new Player(BLUE, defaultDetectiveTickets(), 94)));
+			LocationBelief belief = new LocationBelief(setup, 1024, Behaviour.UNIFORM, game);
+			PossibleLocations possible = PossibleLocations.of(setup);
+			while (state.getWinner().isEmpty()) {
+				ImmutableList<Move> moves = state.getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				if (move.commencedBy().isDetective()) {
+					belief.update(state);
+					possible.update(state);
+					assertThat(belief.rounds()).isEqualTo(state.getMrXTravelLog().size());
+					assertThat(possible.locations()).containsAll(belief.distribution().keySet());
+					for (int i = 0; i < 10; i++) assertThat(possible.contains(belief.sample(sampling))).isTrue();
+				}
+				state = state.advance(move);
+			}
+		}
+	}
+
+}
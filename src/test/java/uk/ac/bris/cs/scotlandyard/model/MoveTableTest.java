@@ -0,0 +1,85 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests that the move table hands out one canonical move per id
+ */
+public class MoveTableTest {
+
+	private static GameSetup standardSetup() throws IOException {
+		return new GameSetup(ScotlandYard.readGraph(Resources.toString(
+				Resources.getResource("graph.txt"), StandardCharsets.UTF_8)),
+				ScotlandYard.STANDARD24MOVES);
+	}
+
+	private static MoveTable standardTable() throws IOException {
+		return standardSetup().compiledGraph().moveTable();
+	}
+
+	@Test public void testIdsAreDenseAndRoundTrip() throws IOException {
+		MoveTable table = standardTable();
+		for (int id = 0; id < table.size(); id++)
+			assertThat(table.idOf(table.get(id))).isEqualTo(id);
+	}
+
+	@Test public void testInternReturnsCanonicalMove() throws IOException {
+		MoveTable table = standardTable();
+		Move move = new Move.DoubleMove(MRX, 106, TAXI, 105, BUS, 87);
+		Move interned = table.intern(move);
+		assertThat(interned).isEqualTo(move);
+		assertThat(table.intern(new Move.DoubleMove(MRX, 106, TAXI, 105, BUS, 87)))
+				.isSameAs(interned);
+	}
+
+	@Test public void testMovesNotOnGraphHaveNoId() throws IOException {
+		MoveTable table = standardTable();
+		assertThat(table.idOf(new Move.SingleMove(RED, 1, TAXI, 2))).isEqualTo(-1);
+		assertThat(table.idOf(new Move.SingleMove(RED, 1, SECRET, 8))).isEqualTo(-1);
+		assertThat(table.idOf(new Move.SingleMove(MRX, 1, SECRET, 8))).isNotEqualTo(-1);
+	}
+
+	@Test public void testAvailableMovesAreCanonical() throws IOException {
+		GameState state = new MyGameStateFactory().build(standardSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(BLUE, defaultDetectiveTickets(), 94));
+		MoveTable table = state.getSetup().compiledGraph().moveTable();
+		for (Move move : state.getAvailableMoves())
+			assertThat(move).isSameAs(table.get(table.idOf(move)));
+	}
+
+	@Test public void testTwoHopEntriesMatchDoubleMoves() throws IOException {
+		GameSetup setup = standardSetup();
+		CompiledGraph graph = setup.compiledGraph();
+		MoveTable table = graph.moveTable();
+		int source = graph.indexOf(106);
+		assertThat(table.twoHopEnd(source)).isGreaterThan(table.twoHopStart(source));
+		for (int entry = table.twoHopStart(source); entry < table.twoHopEnd(source); entry++) {
+			Move.DoubleMove move = (Move.DoubleMove) table.get(table.twoHopId(entry));
+			assertThat(move.source()).isEqualTo(106);
+			assertThat(move.destination1).isEqualTo(graph.nodeAt(table.twoHopMiddle(entry)));
+			assertThat(move.destination2).isEqualTo(graph.nodeAt(table.twoHopTarget(entry)));
+			assertThat(move.ticket1.ordinal()).isEqualTo(table.twoHopTicket1(entry));
+			assertThat(move.ticket2.ordinal()).isEqualTo(table.twoHopTicket2(entry));
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ValueGraphBuilder;
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests that the possible locations follow the travel log the way the rules allow MrX to move
+ */
+public class PossibleLocationsTest {
+
+	// 1 -taxi- 2 -bus- 3 -ferry- 4, and 1 -bus- 5
+	private static GameSetup lineSetup() {
+		return new GameSetup(ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(2, 3, ImmutableSet.of(Transport.BUS))
+				.putEdgeValue(3, 4, ImmutableSet.of(Transport.FERRY))
+				.putEdgeValue(1, 5, ImmutableSet.of(Transport.BUS))
+				.build(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	@Test public void testHiddenEntriesFollowEdgesOfTheTicket() {
+		PossibleLocations locations = new PossibleLocations(lineSetup(), ImmutableSet.of(1));
+		locations.push(LogEntry.hidden(TAXI));
+		assertThat(locations.locations()).containsExactly(2);
+		locations.push(LogEntry.hidden(BUS));
+		assertThat(locations.locations()).containsExactly(3);
+	}
+
+	@Test public void testSecretEntryCrossesAnyEdgeIncludingFerry() {
+		PossibleLocations locations = new PossibleLocations(lineSetup(), ImmutableSet.of(3));
+		locations.push(LogEntry.hidden(SECRET));
+		assertThat(locations.locations()).containsExactlyInAnyOrder(2, 4);
+		locations.push(LogEntry.hidden(BUS));
+		assertThat(locations.locations()).containsExactly(3);
+	}
+
+	@Test public void testRevealNarrowsToRevealedNode() {
+		PossibleLocations locations = new PossibleLocations(lineSetup(), ImmutableSet.of(1, 3));
+		locations.push(LogEntry.reveal(BUS, 5));
+		assertThat(locations.locations()).containsExactly(5);
+		assertThat(locations.size(0)).isEqualTo(2);
+	}
+
+	@Test public void testPopAndExcludeOnlyTouchLastRound() {
+		PossibleLocations locations = new PossibleLocations(lineSetup(), ImmutableSet.of(1));
+		locations.push(LogEntry.hidden(TAXI));
+		locations.push(LogEntry.hidden(SECRET));
+		assertThat(locations.locations()).containsExactlyInAnyOrder(1, 3);
+		locations.exclude(1);
+		assertThat(locations.locations()).containsExactly(3);
+		locations.pop();
+		assertThat(locations.rounds()).isEqualTo(1);
+		assertThat(locations.locations()).containsExactly(2);
+		assertThat(locations.contains(0, 1)).isTrue();
+	}
+
+	@Test public void testEmptyRoundStartsOverFromEveryNode() {
+		PossibleLocations locations = new PossibleLocations(lineSetup(), ImmutableSet.of(5));
+		locations.push(LogEntry.hidden(TAXI));
+		assertThat(locations.locations()).containsExactlyInAnyOrder(1, 2);
+	}
+
+	@Test public void testStartingOverKeepsExcludedNodes() {
+		PossibleLocations locations = new PossibleLocations(lineSetup(), ImmutableSet.of(5));
+		locations.exclude(1); // a detective stood on 1 before MrX moved
+		locations.push(LogEntry.hidden(TAXI));
+		assertThat(locations.contains(0, 1)).isFalse();
+		assertThat(locations.locations()).containsExactly(1);
+		locations.exclude(1);
+		locations.pop();
+		locations.push(LogEntry.hidden(TAXI));
+		assertThat(locations.locations()).containsExactly(1);
+	}
+
+	@Test public void testUpdateAlwaysContainsMrXInRandomGames() throws IOException {
+		GameSetup setup = new GameSetup(ScotlandYard.readGraph(Resources.toString(
+				Resources.getResource("graph.txt"), StandardCharsets.UTF_8)),
+				ScotlandYard.STANDARD24MOVES);
+		Random random = new Random(42);
+		for (int game = 0; game < 20; game++) {
+			int mrX = ScotlandYard.MRX_LOCATIONS.get(random.nextInt(ScotlandYard.MRX_LOCATIONS.size()));
+			GameState state = new MyGameStateFactory().build(setup,
+					new Player(MRX, defaultMrXTickets(), mrX),
+					ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 26),
+							new Player(BLUE, defaultDetectiveTickets(), 94)));
+			PossibleLocations locations = PossibleLocations.of(setup);
+			while (state.getWinner().isEmpty()) {
+				ImmutableList<Move> moves = state.getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				if (move.commencedBy().isDetective()) {
+					locations.update(state);
+					assertThat(locations.rounds()).isEqualTo(state.getMrXTravelLog().size());
+					assertThat(locations.contains(mrX)).isTrue();
+				} else mrX = move.accept(new Move.FunctionalVisitor<>(m -> m.destination, m -> m.destination2));
+				state = state.advance(move);
+			}
+		}
+	}
+
+}
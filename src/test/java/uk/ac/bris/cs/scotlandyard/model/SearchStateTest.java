@@ -0,0 +1,106 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests that the mutable search state follows the game state it was taken from
+ */
+public class SearchStateTest extends ParameterisedModelTestBase {
+
+	private List<Move> playout() {
+		return List.of(
+				x2(MRX, 106, TAXI, 105, BUS, 87),
+				taxi(BLUE, 94, 93),
+				taxi(RED, 91, 105),
+				taxi(MRX, 87, 88),
+				bus(RED, 105, 87),
+				underground(BLUE, 93, 79));
+	}
+
+	private GameState start() {
+		return gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(BLUE, defaultDetectiveTickets(), 94));
+	}
+
+	@Test public void testApplyMatchesAdvance() {
+		GameState state = start();
+		SearchState search = SearchState.of(state);
+		for (Move move : playout()) {
+			assertThat(search.getAvailableMoves()).isEqualTo(state.getAvailableMoves());
+			state = state.advance(move);
+			search.apply(move);
+			assertThat(search.getWinner()).isEqualTo(state.getWinner());
+			assertThat(search.getMrXTravelLog()).isEqualTo(state.getMrXTravelLog());
+		}
+		assertThat(search.depth()).isEqualTo(playout().size());
+	}
+
+	@Test public void testUndoRestoresEveryPosition() {
+		GameState state = start();
+		SearchState search = SearchState.of(state);
+		List<GameState> states = new ArrayList<>();
+		for (Move move : playout()) {
+			states.add(state);
+			state = state.advance(move);
+			search.apply(move);
+		}
+		for (int i = states.size() - 1; i >= 0; i--) {
+			search.undo();
+			assertThat(search.getAvailableMoves()).isEqualTo(states.get(i).getAvailableMoves());
+			assertThat(search.getMrXTravelLog()).isEqualTo(states.get(i).getMrXTravelLog());
+			assertThat(search.location(RED))
+					.isEqualTo(states.get(i).getDetectiveLocation(RED).orElseThrow());
+		}
+		assertThatThrownBy(search::undo).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test public void testIllegalMoveShouldThrow() {
+		SearchState search = SearchState.of(start());
+		assertThatThrownBy(() -> search.apply(taxi(RED, 91, 105)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThat(search.depth()).isZero();
+	}
+
+	@Test public void testBoardSnapshotMatchesState() {
+		GameState state = start();
+		for (Move move : playout()) state = state.advance(move);
+		SearchState search = SearchState.of(state, 88);
+		assertThat(search.getAvailableMoves()).isEqualTo(state.getAvailableMoves());
+		assertThat(search.round()).isEqualTo(state.getMrXTravelLog().size());
+	}
+
+	@Test public void testBoardSnapshotKeepsBlockedDetectiveToMove() {
+		// GREEN only holds bus tickets and the only bus from 7 goes to 42, where RED stands; BLUE
+		// has still to move once RED has, so the round goes on
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 42),
+				new Player(GREEN, makeTickets(0, 2, 0, 0, 0), 7),
+				new Player(BLUE, defaultDetectiveTickets(), 94))
+				.advance(taxi(MRX, 106, 105));
+		SearchState search = SearchState.of(state, 105);
+		search.apply(taxi(RED, 42, 72));
+		assertThat(search.getAvailableMoves())
+				.isEqualTo(state.advance(taxi(RED, 42, 72)).getAvailableMoves())
+				.contains(bus(GREEN, 7, 42));
+	}
+
+}
@@ -0,0 +1,81 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ValueGraphBuilder;
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.UNDERGROUND;
+
+/**
+ * Tests that ticket-constrained distances account for the tickets a detective holds
+ */
+public class TicketDistancesTest {
+
+	// a bus straight from 1 to 2, or three taxis round through 3 and 4, and a ferry on to 5
+	private static GameSetup detourSetup() {
+		return new GameSetup(ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.BUS))
+				.putEdgeValue(1, 3, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(3, 4, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(4, 2, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(2, 5, ImmutableSet.of(Transport.FERRY))
+				.build(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	@Test public void testMissingTicketsForceDetour() {
+		TicketDistances distances = new TicketDistances(detourSetup());
+		assertThat(distances.rounds(1, 3, 1, 0, 2)).isEqualTo(1);
+		assertThat(distances.rounds(1, 3, 0, 0, 2)).isEqualTo(3);
+		assertThat(distances.rounds(1, 2, 0, 0, 2)).isEqualTo(TicketDistances.UNREACHABLE);
+		assertThat(distances.rounds(1, 0, 0, 0, 1)).isEqualTo(0);
+	}
+
+	@Test public void testFerryIsNeverTaken() {
+		TicketDistances distances = new TicketDistances(detourSetup());
+		assertThat(distances.rounds(1, 15, 15, 15, 5)).isEqualTo(TicketDistances.UNREACHABLE);
+		assertThat(distances.rounds(1, 15, 15, 15, 6)).isEqualTo(TicketDistances.UNREACHABLE);
+	}
+
+	@Test public void testNearestReadsEachDetectivesTickets() {
+		TicketDistances distances = new TicketDistances(detourSetup(), 1);
+		Player red = new Player(RED, ImmutableMap.of(TAXI, 3, BUS, 0, UNDERGROUND, 0), 1);
+		Player blue = new Player(BLUE, ImmutableMap.of(TAXI, 0, BUS, 1, UNDERGROUND, 0), 1);
+		assertThat(distances.rounds(red, 2)).isEqualTo(3);
+		assertThat(distances.rounds(blue, 2)).isEqualTo(1);
+		assertThat(distances.nearest(ImmutableList.of(red, blue), 2)).isEqualTo(1);
+		assertThat(distances.nearest(ImmutableList.of(red, blue), 4)).isEqualTo(2);
+	}
+
+	@Test public void testPlentyOfTicketsMatchesHopDistance() throws IOException {
+		GameSetup setup = new GameSetup(ScotlandYard.readGraph(Resources.toString(
+				Resources.getResource("graph.txt"), StandardCharsets.UTF_8)),
+				ScotlandYard.STANDARD24MOVES);
+		TicketDistances distances = new TicketDistances(setup);
+		DistanceOracle oracle = DistanceOracle.of(setup);
+		for (int from : setup.graph.nodes())
+			for (int to : setup.graph.nodes())
+				assertThat(distances.rounds(from, 15, 15, 15, to))
+						.isEqualTo(oracle.detectiveDistance(from, to));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeTicketsThrow() {
+		new TicketDistances(detourSetup()).rounds(1, -1, 0, 0, 2);
+	}
+
+}
@@ -0,0 +1,115 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests that the Zobrist key of a game state identifies its position
+ */
+public class ZobristKeyTest extends ParameterisedModelTestBase {
+
+	private GameState start() {
+		return gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(BLUE, defaultDetectiveTickets(), 94));
+	}
+
+	@Test public void testDetectiveOrderTransposes() {
+		GameState state = start().advance(x2(MRX, 106, TAXI, 105, BUS, 87));
+		GameState redFirst = state.advance(taxi(RED, 91, 105)).advance(taxi(BLUE, 94, 93));
+		GameState blueFirst = state.advance(taxi(BLUE, 94, 93)).advance(taxi(RED, 91, 105));
+		assertThat(redFirst.zobristKey()).isEqualTo(blueFirst.zobristKey());
+	}
+
+	@Test public void testEveryMoveChangesKey() {
+		GameState state = start();
+		for (Move move : state.getAvailableMoves())
+			assertThat(state.advance(move).zobristKey()).isNotEqualTo(state.zobristKey());
+	}
+
+	@Test public void testSearchStateKeyFollowsState() {
+		GameState state = start();
+		SearchState search = SearchState.of(state);
+		assertThat(search.zobristKey()).isEqualTo(state.zobristKey());
+		for (Move move : List.of(x2(MRX, 106, TAXI, 105, BUS, 87), taxi(RED, 91, 105))) {
+			state = state.advance(move);
+			search.apply(move);
+			assertThat(search.zobristKey()).isEqualTo(state.zobristKey());
+		}
+		long key = search.zobristKey();
+		search.apply(taxi(BLUE, 94, 93));
+		search.undo();
+		assertThat(search.zobristKey()).isEqualTo(key);
+	}
+
+	@Test public void testBoardKeyCountsBlockedDetectiveStillToMove() {
+		// GREEN only holds bus tickets and the only bus from 7 goes to 42, where RED stands
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 42),
+				new Player(GREEN, makeTickets(0, 2, 0, 0, 0), 7))
+				.advance(taxi(MRX, 106, 105));
+		long mrXLocation = Zobrist.location(ScotlandYard.ALL_PIECES.indexOf(MRX), 105); // left out of board keys
+		assertThat(Zobrist.of(state) ^ mrXLocation).isEqualTo(state.zobristKey());
+		assertThat(Zobrist.canonical(state) ^ mrXLocation).isEqualTo(state.canonicalKey());
+	}
+
+	@Test public void testSwappedDetectiveColoursShareCanonicalKey() {
+		GameState state = start();
+		GameState swapped = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 94),
+				new Player(BLUE, defaultDetectiveTickets(), 91));
+		assertThat(swapped.canonicalKey()).isEqualTo(state.canonicalKey());
+		assertThat(swapped.zobristKey()).isNotEqualTo(state.zobristKey());
+		state = state.advance(x2(MRX, 106, TAXI, 105, BUS, 87)).advance(taxi(RED, 91, 105));
+		swapped = swapped.advance(x2(MRX, 106, TAXI, 105, BUS, 87)).advance(taxi(BLUE, 91, 105));
+		assertThat(swapped.canonicalKey()).isEqualTo(state.canonicalKey());
+		assertThat(SearchState.of(state).canonicalKey()).isEqualTo(state.canonicalKey());
+	}
+
+	@Test public void testCanonicalDetectivesCarryMovesOverToSwappedColours() {
+		GameState state = start().advance(x2(MRX, 106, TAXI, 105, BUS, 87));
+		GameState swapped = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 94),
+				new Player(BLUE, defaultDetectiveTickets(), 91))
+				.advance(x2(MRX, 106, TAXI, 105, BUS, 87));
+		assertThat(state.canonicalDetectives()).containsExactly(RED, BLUE);
+		assertThat(swapped.canonicalDetectives()).containsExactly(BLUE, RED);
+		assertThat(SearchState.of(swapped).canonicalDetectives()).isEqualTo(swapped.canonicalDetectives());
+		assertThat(Zobrist.canonicalDetectives(swapped)).isEqualTo(swapped.canonicalDetectives());
+		Move stored = taxi(RED, 91, 105);
+		Move carried = Zobrist.recolour(stored, state.canonicalDetectives(), swapped.canonicalDetectives());
+		assertThat(carried).isEqualTo(taxi(BLUE, 91, 105));
+		assertThat(swapped.getAvailableMoves()).contains(carried);
+		assertThat(swapped.advance(carried).canonicalKey()).isEqualTo(state.advance(stored).canonicalKey());
+	}
+
+	@Test public void testSwappedDetectiveTicketsChangeCanonicalKey() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, makeTickets(11, 8, 4, 0, 0), 91),
+				new Player(BLUE, makeTickets(10, 8, 4, 0, 0), 94));
+		GameState swapped = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, makeTickets(10, 8, 4, 0, 0), 91),
+				new Player(BLUE, makeTickets(11, 8, 4, 0, 0), 94));
+		assertThat(swapped.canonicalKey()).isNotEqualTo(state.canonicalKey());
+	}
+
+}